@@ -0,0 +1,382 @@
+package com.jdrago.sudoku;
+
+import android.util.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Keeps a game saved as it is played: a snapshot of the board followed by one 8 byte record per move, appended as
+ * the move is made. A move costs one small write, and a process killed at any point loses at most the moves still
+ * waiting for the writer. Once the moves pass COMPACT_BYTES the file is rewritten as a fresh snapshot.
+ *
+ * The game thread never touches the file. It queues moves, or a SudokuGame.Snapshot when the board is replaced,
+ * and a single writer thread serializes and writes them. A snapshot makes everything queued before it moot, so
+ * however many arrive while the writer is busy only the newest is written. flush() waits for the writer and syncs
+ * the file, for when the app goes to the background.
+ *
+ * Layout, big-endian:
+ *   int   MAGIC
+ *   int   VERSION
+ *   int   snapshot length, then the snapshot in the SudokuGame.saveBytes() format
+ *   int   undo history count, int undo history position, then count moves, oldest first
+ *   long  moves as SudokuGame.MoveListener.onMove() gets them, until the end of the file
+ */
+public class GameJournal implements SudokuGame.MoveListener {
+    private static String TAG = "GameJournal";
+
+    public static final int MAGIC = 0x53444b4a; // "SDKJ"
+    public static final int VERSION = 1;
+
+    // Moves appended before the file is rewritten as a snapshot. The undo history goes in the snapshot, so a
+    // fresh one can hold up to HISTORY_CAPACITY moves itself.
+    static final long COMPACT_BYTES = 64 * 1024;
+
+    private static final int RECORD_BYTES = 8;
+    private static final int HEADER_BYTES = 12;
+
+    private final File file_;
+    private long restoredLength_; // Bytes of the file restore() read, or -1 if the file has to be rewritten
+
+    private SudokuGame game_;
+    private long length_; // Bytes in the file once the writer has caught up
+
+    // Work for the writer, guarded by this. pendingMoves_ follow pendingSnapshot_ when there is one.
+    private Thread writer_;
+    private SudokuGame.Snapshot pendingSnapshot_;
+    private long pendingMoves_[] = new long[64];
+    private int pendingCount_;
+    private long truncateTo_ = -1;
+    private boolean syncRequested_;
+    private boolean busy_;         // The writer is writing what it last took
+    private boolean needSnapshot_; // A write failed, so the file no longer leads to the game
+
+    // Only used by the writer
+    private FileOutputStream out_;
+
+    /**
+     * @param file Where the journal is kept. Written next to it while compacting is file + ".tmp".
+     */
+    public GameJournal(File file) {
+        file_ = file;
+        restoredLength_ = -1;
+    }
+
+    /**
+     * Loads the game from the journal: the snapshot, its undo history and then every move recorded after it.
+     * A move that was cut short, or anything after it that doesn't fit the board, is dropped. Call before
+     * attach().
+     * @return false, leaving the game untouched, if there is no journal or it does not start with a valid
+     * snapshot.
+     */
+    public boolean restore(SudokuGame game) throws IOException {
+        restoredLength_ = -1;
+        if (!file_.exists()) {
+            return false;
+        }
+        RandomAccessFile raf = new RandomAccessFile(file_, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            long size = channel.size();
+            if ((size < HEADER_BYTES) || (size > Integer.MAX_VALUE)) {
+                return false;
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if ((buffer.getInt() != MAGIC) || (buffer.getInt() != VERSION)) {
+                return false;
+            }
+            int snapshotLength = buffer.getInt();
+            if ((snapshotLength < 0) || (snapshotLength > SudokuGame.SAVE_MAX_LENGTH)
+                    || (buffer.remaining() < snapshotLength + 8)) {
+                return false;
+            }
+            byte snapshot[] = new byte[snapshotLength];
+            buffer.get(snapshot);
+            int count = buffer.getInt();
+            int position = buffer.getInt();
+            if ((count < 0) || (count > SudokuGame.HISTORY_CAPACITY) || (buffer.remaining() < count * RECORD_BYTES)) {
+                return false;
+            }
+            long history[] = new long[count];
+            for (int i = 0; i < count; ++i) {
+                history[i] = buffer.getLong();
+            }
+            if (!game.loadBytes(snapshot, 0, snapshotLength)) {
+                return false;
+            }
+            game.restoreHistory(history, count, position);
+
+            while (buffer.remaining() >= RECORD_BYTES) {
+                int start = buffer.position();
+                if (!game.replayMove(buffer.getLong())) {
+                    buffer.position(start);
+                    break;
+                }
+            }
+            restoredLength_ = buffer.position();
+            return true;
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Starts recording the game's moves on a new writer thread. The journal carries on from what restore() just
+     * read into this game, or starts over from a snapshot of it.
+     */
+    public void attach(SudokuGame game) {
+        close();
+        synchronized (this) {
+            game_ = game;
+            if (restoredLength_ >= 0) {
+                // Drop whatever restore() could not replay, so that new moves follow the last good one
+                truncateTo_ = restoredLength_;
+                length_ = restoredLength_;
+                restoredLength_ = -1;
+            } else {
+                queueSnapshot();
+            }
+            writer_ = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    write();
+                }
+            }, TAG);
+            writer_.start();
+        }
+        game.setMoveListener(this);
+    }
+
+    /**
+     * Stops recording, once the writer has written everything queued. The file stays ready for restore().
+     */
+    public void close() {
+        Thread writer;
+        synchronized (this) {
+            if (game_ != null) {
+                game_.setMoveListener(null);
+                game_ = null;
+            }
+            writer = writer_;
+            writer_ = null;
+            notifyAll();
+        }
+        if (writer != null) {
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Waits until everything queued so far is written and synced to the disk.
+     */
+    public synchronized void flush() {
+        if (writer_ == null) {
+            return;
+        }
+        syncRequested_ = true;
+        notifyAll();
+        try {
+            while (syncRequested_ || busy_) {
+                wait();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return The size of the journal file once the writer has caught up.
+     */
+    public synchronized long length() {
+        return length_;
+    }
+
+    @Override
+    public synchronized void onMove(long move) {
+        if (needSnapshot_ || (length_ + RECORD_BYTES > COMPACT_BYTES)) {
+            // Also catches up after a failed write: the snapshot holds every move missed since
+            queueSnapshot();
+            return;
+        }
+        if (pendingCount_ == pendingMoves_.length) {
+            long grown[] = new long[pendingCount_ * 2];
+            System.arraycopy(pendingMoves_, 0, grown, 0, pendingCount_);
+            pendingMoves_ = grown;
+        }
+        pendingMoves_[pendingCount_++] = move;
+        length_ += RECORD_BYTES;
+        notifyAll();
+    }
+
+    @Override
+    public synchronized void onReset() {
+        queueSnapshot();
+    }
+
+    /**
+     * Replaces whatever the writer has not got to yet with a snapshot of the game as it is now.
+     */
+    private void queueSnapshot() {
+        SudokuGame.Snapshot snapshot = game_.snapshot();
+        pendingSnapshot_ = snapshot;
+        pendingCount_ = 0;
+        needSnapshot_ = false;
+        length_ = HEADER_BYTES + SudokuGame.saveLength(snapshot.size) + 8
+                + (long) snapshot.historyCount() * RECORD_BYTES;
+        notifyAll();
+    }
+
+    // ----------------------------------------------------------------------------------
+    // Writer thread
+
+    private void write() {
+        byte snapshotBytes[] = new byte[SudokuGame.SAVE_MAX_LENGTH];
+        long moves[] = new long[64];
+        byte moveBytes[] = new byte[moves.length * RECORD_BYTES];
+        try {
+            while (true) {
+                SudokuGame.Snapshot snapshot;
+                long truncateTo;
+                int count;
+                boolean sync;
+                synchronized (this) {
+                    busy_ = false;
+                    notifyAll();
+                    while ((pendingSnapshot_ == null) && (pendingCount_ == 0) && (truncateTo_ < 0)
+                            && !syncRequested_) {
+                        if (writer_ != Thread.currentThread()) {
+                            return;
+                        }
+                        try {
+                            wait();
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                    }
+                    snapshot = pendingSnapshot_;
+                    truncateTo = truncateTo_;
+                    sync = syncRequested_;
+                    count = pendingCount_;
+                    long swap[] = pendingMoves_;
+                    pendingMoves_ = moves;
+                    moves = swap;
+                    pendingSnapshot_ = null;
+                    truncateTo_ = -1;
+                    syncRequested_ = false;
+                    pendingCount_ = 0;
+                    busy_ = true;
+                }
+
+                try {
+                    if (truncateTo >= 0) {
+                        truncate(truncateTo);
+                    }
+                    if (snapshot != null) {
+                        writeSnapshot(snapshot, snapshotBytes);
+                    }
+                    if (count > 0) {
+                        if (moveBytes.length < count * RECORD_BYTES) {
+                            moveBytes = new byte[moves.length * RECORD_BYTES];
+                        }
+                        writeMoves(moves, count, moveBytes);
+                    }
+                    if (sync && (out_ != null)) {
+                        out_.getFD().sync();
+                    }
+                } catch (IOException e) {
+                    Log.w(TAG, "could not write journal", e);
+                    closeOutput();
+                    synchronized (this) {
+                        needSnapshot_ = true;
+                    }
+                }
+            }
+        } finally {
+            closeOutput();
+            synchronized (this) {
+                busy_ = false;
+                notifyAll();
+            }
+        }
+    }
+
+    private void truncate(long length) throws IOException {
+        closeOutput();
+        RandomAccessFile raf = new RandomAccessFile(file_, "rw");
+        try {
+            raf.setLength(length);
+        } finally {
+            raf.close();
+        }
+        out_ = new FileOutputStream(file_, true);
+    }
+
+    /**
+     * Rewrites the journal as the snapshot, with no moves after it. The new file is written beside the old one and
+     * renamed over it, so a kill part way through leaves the old journal whole.
+     */
+    private void writeSnapshot(SudokuGame.Snapshot snapshot, byte buffer[]) throws IOException {
+        closeOutput();
+        int snapshotLength = snapshot.saveBytes(buffer, 0);
+        int count = snapshot.historyCount();
+
+        File tmp = new File(file_.getPath() + ".tmp");
+        FileOutputStream file = new FileOutputStream(tmp);
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(file));
+        try {
+            data.writeInt(MAGIC);
+            data.writeInt(VERSION);
+            data.writeInt(snapshotLength);
+            data.write(buffer, 0, snapshotLength);
+            data.writeInt(count);
+            data.writeInt(snapshot.historyPosition());
+            for (int i = 0; i < count; ++i) {
+                data.writeLong(snapshot.historyMove(i));
+            }
+            data.flush();
+            file.getFD().sync();
+        } finally {
+            data.close();
+        }
+        if (!tmp.renameTo(file_)) {
+            tmp.delete();
+            throw new IOException("could not replace " + file_);
+        }
+        out_ = new FileOutputStream(file_, true);
+    }
+
+    private void writeMoves(long moves[], int count, byte buffer[]) throws IOException {
+        if (out_ == null) {
+            throw new IOException("journal not open");
+        }
+        for (int k = 0; k < count; ++k) {
+            long move = moves[k];
+            for (int i = 0; i < RECORD_BYTES; ++i) {
+                buffer[k * RECORD_BYTES + i] = (byte) (move >>> (56 - 8 * i));
+            }
+        }
+        out_.write(buffer, 0, count * RECORD_BYTES);
+    }
+
+    private void closeOutput() {
+        if (out_ == null) {
+            return;
+        }
+        try {
+            out_.close();
+        } catch (IOException e) {
+            Log.w(TAG, "could not close journal", e);
+        }
+        out_ = null;
+    }
+}
@@ -0,0 +1,231 @@
+package com.jdrago.sudoku;
+
+import android.os.Process;
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+
+/**
+ * Keeps a few ready puzzles per difficulty so that starting a new game does not have to wait for the generator.
+ * A low priority background thread tops the queues back up whenever a puzzle is taken, and the queues are saved
+ * to a file in app-private storage so that they survive restarts.
+ */
+public class PuzzlePool implements PuzzleSource {
+    private static String TAG = "PuzzlePool";
+
+    private final File file_;
+    private final int capacity_;
+    private final SudokuGenerator.Difficulty difficulties_[];
+    private final EnumMap<SudokuGenerator.Difficulty, ArrayDeque<SudokuGenerator.Board>> queues_;
+
+    // The current refill thread. A thread that is no longer the current worker exits at its next check.
+    private Thread worker_;
+
+    /**
+     * @param file Where the pool is saved between runs.
+     * @param capacity How many puzzles to keep ready for each difficulty.
+     * @param difficulties The difficulties to keep puzzles for.
+     */
+    public PuzzlePool(File file, int capacity, SudokuGenerator.Difficulty... difficulties) {
+        file_ = file;
+        capacity_ = capacity;
+        difficulties_ = difficulties;
+        queues_ = new EnumMap<SudokuGenerator.Difficulty, ArrayDeque<SudokuGenerator.Board>>(SudokuGenerator.Difficulty.class);
+        for (SudokuGenerator.Difficulty difficulty : difficulties) {
+            queues_.put(difficulty, new ArrayDeque<SudokuGenerator.Board>(capacity));
+        }
+    }
+
+    @Override
+    public synchronized SudokuGenerator.Board take(SudokuGenerator.Difficulty difficulty) {
+        ArrayDeque<SudokuGenerator.Board> queue = queues_.get(difficulty);
+        if (queue == null) {
+            return null;
+        }
+        SudokuGenerator.Board board = queue.poll();
+        notifyAll();
+        return board;
+    }
+
+    public synchronized int available(SudokuGenerator.Difficulty difficulty) {
+        ArrayDeque<SudokuGenerator.Board> queue = queues_.get(difficulty);
+        return (queue == null) ? 0 : queue.size();
+    }
+
+    // ----------------------------------------------------------------------------------
+    // Background refill
+
+    public synchronized void start() {
+        if (worker_ != null) {
+            return;
+        }
+        worker_ = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                refill();
+            }
+        }, TAG);
+        worker_.setDaemon(true);
+        worker_.start();
+    }
+
+    public synchronized void stop() {
+        if (worker_ == null) {
+            return;
+        }
+        worker_.interrupt();
+        worker_ = null;
+        notifyAll();
+    }
+
+    private void refill() {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+
+        // Single threaded on purpose, the pool must not compete with the game for cores.
+        SudokuGenerator generator = new SudokuGenerator();
+        while (true) {
+            SudokuGenerator.Difficulty difficulty;
+            synchronized (this) {
+                while (true) {
+                    if (worker_ != Thread.currentThread()) {
+                        return;
+                    }
+                    difficulty = emptiest();
+                    if (difficulty != null) {
+                        break;
+                    }
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }
+
+            SudokuGenerator.Board board = generator.generateSudoku(difficulty);
+            if (board == null) {
+                // Interrupted by stop(), so the check above ends this worker
+                continue;
+            }
+
+            synchronized (this) {
+                ArrayDeque<SudokuGenerator.Board> queue = queues_.get(difficulty);
+                if (queue.size() < capacity_) {
+                    queue.add(board);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return The difficulty with the fewest ready puzzles, or null if every queue is full.
+     */
+    private SudokuGenerator.Difficulty emptiest() {
+        SudokuGenerator.Difficulty emptiest = null;
+        int lowest = capacity_;
+        for (SudokuGenerator.Difficulty difficulty : difficulties_) {
+            int size = queues_.get(difficulty).size();
+            if (size < lowest) {
+                lowest = size;
+                emptiest = difficulty;
+            }
+        }
+        return emptiest;
+    }
+
+    // ----------------------------------------------------------------------------------
+    // Save / Load
+
+    /**
+     * Saves one puzzle per line as the difficulty name followed by the PuzzleCodec digits form.
+     * The file is written next to the real one and renamed over it so that a crash can't leave it half written.
+     */
+    public void save() {
+        StringBuilder sb = new StringBuilder();
+        synchronized (this) {
+            for (SudokuGenerator.Difficulty difficulty : difficulties_) {
+                for (SudokuGenerator.Board board : queues_.get(difficulty)) {
+                    sb.append(difficulty.name()).append(' ');
+                    sb.append(PuzzleCodec.toDigits(board));
+                    sb.append('\n');
+                }
+            }
+        }
+
+        File tmp = new File(file_.getPath() + ".tmp");
+        Writer writer = null;
+        try {
+            writer = new FileWriter(tmp);
+            writer.write(sb.toString());
+            writer.close();
+            writer = null;
+            if (!tmp.renameTo(file_)) {
+                Log.w(TAG, "could not rename " + tmp);
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "could not save pool", e);
+        } finally {
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (IOException e) {
+                }
+            }
+        }
+    }
+
+    public void load() {
+        if (!file_.exists()) {
+            return;
+        }
+
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new FileReader(file_));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int space = line.indexOf(' ');
+                if ((space < 0) || (line.length() != space + 1 + PuzzleCodec.DIGITS_LENGTH)) {
+                    continue;
+                }
+
+                SudokuGenerator.Difficulty difficulty;
+                try {
+                    difficulty = SudokuGenerator.Difficulty.valueOf(line.substring(0, space));
+                } catch (IllegalArgumentException e) {
+                    continue;
+                }
+
+                SudokuGenerator.Board board = new SudokuGenerator.Board();
+                try {
+                    PuzzleCodec.fromDigits(line, space + 1, board);
+                } catch (IllegalArgumentException e) {
+                    continue;
+                }
+
+                synchronized (this) {
+                    ArrayDeque<SudokuGenerator.Board> queue = queues_.get(difficulty);
+                    if ((queue != null) && (queue.size() < capacity_)) {
+                        queue.add(board);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "could not load pool", e);
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException e) {
+                }
+            }
+        }
+    }
+}
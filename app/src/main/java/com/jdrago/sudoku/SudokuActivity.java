@@ -6,11 +6,29 @@ import android.support.v7.app.AppCompatActivity;
 import android.os.Bundle;
 import android.util.Log;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 public class SudokuActivity extends AppCompatActivity {
     private static String TAG = "SudokuActivity";
     static final String STATE_GAME = "game";
+    static final String POOL_FILE = "puzzles.txt";
+    static final String BANK_FILE = "puzzles.bank";
+    static final String SEED_FILE = "seeds.txt";
+    static final String JOURNAL_FILE = "game.journal";
+    static final int POOL_CAPACITY = 5;
+    static final int SEED_CAPACITY = 20;
 
     SudokuView view_;
+    PuzzlePool pool_;
+    SeedPuzzleSource seeds_;
+    GameJournal journal_;
+
+    // Writes the pool and the seeds when the app goes to the background, so that onPause does not wait on the
+    // disk. A single thread keeps one save from racing the next.
+    final ExecutorService saver_ = Executors.newSingleThreadExecutor();
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -19,22 +37,77 @@ public class SudokuActivity extends AppCompatActivity {
         view_ = new SudokuView(this, null);
         setContentView(view_);
 
-        SharedPreferences pref = getPreferences(Context.MODE_PRIVATE);
-        String gameState = pref.getString(STATE_GAME, "");
-        view_.setGameState(gameState);
-        Log.d(TAG, "onCreate (" + gameState + ")");
+        // A bank, when one has been installed, serves puzzles first. The pool covers whatever it lacks, and every
+        // puzzle it hands out becomes a seed whose transforms stand in for it while it is refilling.
+        File bankFile = new File(getFilesDir(), BANK_FILE);
+        if (bankFile.exists()) {
+            try {
+                view_.addPuzzleSource(PuzzleBank.open(bankFile));
+            } catch (IOException e) {
+                Log.w(TAG, "could not open puzzle bank", e);
+            }
+        }
+
+        pool_ = new PuzzlePool(new File(getFilesDir(), POOL_FILE), POOL_CAPACITY,
+                SudokuGenerator.Difficulty.EASY, SudokuGenerator.Difficulty.MEDIUM, SudokuGenerator.Difficulty.HARD);
+        pool_.load();
+        seeds_ = new SeedPuzzleSource(pool_, SEED_CAPACITY);
+        try {
+            seeds_.load(new File(getFilesDir(), SEED_FILE));
+        } catch (IOException e) {
+            Log.w(TAG, "could not load seeds", e);
+        }
+        view_.addPuzzleSource(seeds_);
+
+        // The journal saves every move as it is made. Games saved by older versions are still in the preferences.
+        journal_ = new GameJournal(new File(getFilesDir(), JOURNAL_FILE));
+        boolean restored = false;
+        try {
+            restored = view_.restoreGame(journal_);
+        } catch (IOException e) {
+            Log.w(TAG, "could not read journal", e);
+        }
+        if (!restored) {
+            SharedPreferences pref = getPreferences(Context.MODE_PRIVATE);
+            String gameState = pref.getString(STATE_GAME, "");
+            view_.setGameState(gameState);
+            Log.d(TAG, "onCreate (" + gameState + ")");
+        }
+        view_.attachJournal(journal_);
+        if (view_.isGameEmpty()) {
+            view_.startNewGame(SudokuGenerator.Difficulty.EASY, SudokuGenerator.Board.SIZE);
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        saver_.shutdown();
+        journal_.close();
+        super.onDestroy();
     }
 
     @Override
-    public void onSaveInstanceState(Bundle savedInstanceState) {
-        SharedPreferences pref = getPreferences(Context.MODE_PRIVATE);
-        SharedPreferences.Editor editor = pref.edit();
-        String gameState = view_.gameState();
-        editor.putString(STATE_GAME, gameState);
-        editor.commit();
-        Log.d(TAG, "onSaveInstanceState ("+gameState+")");
+    protected void onResume() {
+        super.onResume();
+        pool_.start();
+    }
 
-        super.onSaveInstanceState(savedInstanceState);
+    @Override
+    protected void onPause() {
+        journal_.flush();
+        pool_.stop();
+        saver_.execute(new Runnable() {
+            @Override
+            public void run() {
+                pool_.save();
+                try {
+                    seeds_.save(new File(getFilesDir(), SEED_FILE));
+                } catch (IOException e) {
+                    Log.w(TAG, "could not save seeds", e);
+                }
+            }
+        });
+        super.onPause();
     }
 /*
     @Override
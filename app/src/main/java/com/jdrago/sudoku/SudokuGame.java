@@ -4,210 +4,996 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+
 public class SudokuGame {
     public class Cell {
         int value;
         boolean locked;
         boolean error;
-        boolean pencil[];
+        int pencil; // Bit i is set when i + 1 is pencilled in
 
         public Cell(int v, boolean l) {
             value = v;
             locked = l;
             error = false;
-            pencil = new boolean[9];
+            pencil = 0;
         }
 
         public String pencilString() {
             String s = "";
-            for (int i = 0; i < 9; ++i) {
-                if (pencil[i]) {
-                    s += Integer.toString(i + 1);
+            for (int i = 0; i < size; ++i) {
+                if ((pencil & (1 << i)) != 0) {
+                    s += SudokuGenerator.Board.symbol(i + 1);
                 }
             }
             return s;
         }
     }
 
+    /**
+     * Hears about every move as it is made, to keep a copy of the game somewhere else up to date.
+     */
+    public interface MoveListener {
+        /**
+         * @param move A change as packed by packMove, or MOVE_UNDO_RECORD or MOVE_REDO_RECORD. Passing the moves
+         *             to replayMove() in the same order on the same starting game gives back the same game,
+         *             undo history included.
+         */
+        void onMove(long move);
+
+        /**
+         * The board was replaced or edited outside of moves, so the moves so far no longer lead to it.
+         */
+        void onReset();
+    }
+
+    /**
+     * The next logical move on the board, see hint().
+     */
+    public static class Hint {
+        public final DifficultyGrader.Technique technique;
+
+        // The cell to fill in and its value, for a placement. value is 0 for an elimination.
+        public final int x;
+        public final int y;
+        public final int value;
+
+        // For an elimination, the candidates it rules out in each cell, bit (n - 1) for n, indexed y * size + x.
+        // null for a placement.
+        public final int eliminations[];
+
+        Hint(DifficultyGrader.Technique technique, int x, int y, int value, int eliminations[]) {
+            this.technique = technique;
+            this.x = x;
+            this.y = y;
+            this.value = value;
+            this.eliminations = eliminations;
+        }
+    }
+
+    /**
+     * A copy of the board and undo history taken by snapshot(). It doesn't change as the game goes on, so it can
+     * be serialized on another thread while the game is played.
+     */
+    public static class Snapshot {
+        public final int size;
+
+        // Per cell, row by row: the value in bits 0-4, the pencil marks from bit 5 and SNAPSHOT_LOCKED.
+        private final int cells[];
+        private final long history[];
+        private final int historyPosition;
+
+        Snapshot(int size, int cells[], long history[], int historyPosition) {
+            this.size = size;
+            this.cells = cells;
+            this.history = history;
+            this.historyPosition = historyPosition;
+        }
+
+        /**
+         * Writes the binary save format, as SudokuGame.saveBytes() would have when the snapshot was taken.
+         * @param out Must have room for saveLength(size) bytes from offset.
+         * @return The number of bytes written.
+         */
+        public int saveBytes(byte out[], int offset) {
+            int length = startSave(out, offset, size);
+            for (int k = 0; k < cells.length; ++k) {
+                int cell = cells[k];
+                saveCell(out, offset, size, k, cell & 0x1f, (cell & SNAPSHOT_LOCKED) != 0,
+                        (cell & ~SNAPSHOT_LOCKED) >>> 5);
+            }
+            return length;
+        }
+
+        public int historyCount() {
+            return history.length;
+        }
+
+        public int historyPosition() {
+            return historyPosition;
+        }
+
+        /**
+         * @param index From 0 for the oldest change kept up to historyCount() - 1.
+         */
+        public long historyMove(int index) {
+            return history[index];
+        }
+    }
+
+    // Binary save format, version 1, for a board of N cells on a side:
+    //   1 byte           version
+    //   1 byte           board size N
+    //   N*N bytes        cell values, row by row, 0 for empty
+    //   (N*N+7)/8 bytes  locked bitset, cell k in bit (k & 7) of byte (k >> 3)
+    //   then             pencil masks, N bits per cell packed in the same bit order
+    // save() returns it as SAVE_PREFIX followed by the Base64 of those bytes.
+    static final char SAVE_PREFIX = 'B';
+    static final int SAVE_VERSION = 1;
+    static final int SAVE_MAX_LENGTH = saveLength(SudokuGenerator.Board.MAX_SIZE);
+    private static final int SNAPSHOT_LOCKED = 1 << 31;
+
     Cell grid[][];
     boolean solved;
+    SudokuGenerator.Difficulty difficulty; // What the puzzle grades at, null when not known
+    int size;    // Cells on a side, which is also the highest value
+    int boxSize; // Cells on a side of a box
+
+    // How many times each digit appears in every row, column and box, indexed [unit][digit]. These follow
+    // every value change, so an edit only has to look at the units of the cell it touches.
+    private int rowCounts[][];
+    private int colCounts[][];
+    private int boxCounts[][];
+    private int digitCounts[];
+    private int filled;     // Cells holding a value
+    private int duplicates; // Extra copies of a digit within a unit, summed over all units
+
+    // The digits each row, column and box holds, bit (v - 1) for v, following the counts above. A cell's candidates
+    // are whatever none of its three units holds, less the eliminations of the hints applied since the last time a
+    // value was taken back. Indexed y * size + x.
+    private int rowMasks[];
+    private int colMasks[];
+    private int boxMasks[];
+    private int eliminated[];
+
+    // Undo history: every change the player makes is packed into a long (see packMove) and kept in a ring, so
+    // the history takes the same memory however long a game goes on. A move that changes several cells, like a
+    // value that also cleans up the pencil marks around it, is a group of changes whose first one is flagged.
+    // historyPosition counts the changes currently applied; the ones after it, up to historyCount, can be redone.
+    static final int HISTORY_CAPACITY = 4096;
+    static final int MOVE_VALUE = 0;
+    static final int MOVE_PENCIL = 1;
+    static final int MOVE_UNDO = 2;
+    static final int MOVE_REDO = 3;
+    static final long MOVE_UNDO_RECORD = (long) MOVE_UNDO << 46;
+    static final long MOVE_REDO_RECORD = (long) MOVE_REDO << 46;
+    private static final long MOVE_FIRST = 1L << 45;
+    private static final long MOVE_ELIMINATION = 1L << 48;
+    private static final long MOVE_ELIMINATION_CLEARED = 1L << 49;
+
+    private final long history[] = new long[HISTORY_CAPACITY];
+    private int historyStart;    // Ring index of the oldest change
+    private int historyCount;    // Changes stored
+    private int historyPosition; // Changes applied
+
+    private MoveListener moveListener;
+
+    // Scratch space for hint(), made on first use.
+    private DifficultyGrader hintGrader;
+    private int hintValues[];
+    private int hintCandidates[];
 
+    ArrayList<PuzzleSource> puzzleSources = new ArrayList<PuzzleSource>();
+
+    private final byte saveBytes[] = new byte[SAVE_MAX_LENGTH];
+    private final char saveChars[] = new char[1 + Base64Codec.encodedLength(SAVE_MAX_LENGTH)];
+
+    /**
+     * Makes an empty 9x9 game. Generating a puzzle can take a while, so that is left to whoever fills the game in:
+     * a restore, a ready puzzle, or a generation off the UI thread.
+     */
     public SudokuGame() {
-        newGame();
+        setSize(SudokuGenerator.Board.SIZE);
+        clear();
     }
 
     public void clear() {
-        grid = new Cell[9][9];
-        for (int j = 0; j < 9; ++j) {
-            for (int i = 0; i < 9; ++i) {
-                grid[i][j] = new Cell(0, false);
+        grid = emptyGrid();
+        updateCells();
+    }
+
+    /**
+     * Switches to boards of another size. The grid must be replaced afterwards.
+     */
+    private void setSize(int newSize) {
+        if ((newSize == size) && (grid != null)) {
+            return;
+        }
+        size = newSize;
+        boxSize = (int) Math.sqrt(newSize);
+        rowCounts = new int[size][size + 1];
+        colCounts = new int[size][size + 1];
+        boxCounts = new int[size][size + 1];
+        digitCounts = new int[size + 1];
+        rowMasks = new int[size];
+        colMasks = new int[size];
+        boxMasks = new int[size];
+        eliminated = new int[size * size];
+    }
+
+    private Cell[][] emptyGrid() {
+        Cell g[][] = new Cell[size][size];
+        for (int j = 0; j < size; ++j) {
+            for (int i = 0; i < size; ++i) {
+                g[i][j] = new Cell(0, false);
             }
         }
-        solved = false;
+        return g;
     }
 
+    /**
+     * Empties and unlocks a cell. This edits the puzzle rather than playing it, so it can't be undone and the undo
+     * history is dropped.
+     */
     public void clear(int x, int y) {
-        grid[x][y] = new Cell(0, false);
-        updateCells();
+        clearHistory();
+        Arrays.fill(eliminated, 0);
+        changeValue(x, y, 0);
+        Cell cell = grid[x][y];
+        cell.locked = false;
+        cell.pencil = 0;
+        if (moveListener != null) {
+            moveListener.onReset();
+        }
     }
 
+    /**
+     * Starts an easy game, generating it on the calling thread if no puzzle is ready.
+     */
     public void newGame() {
         newGame(SudokuGenerator.Difficulty.EASY);
     }
 
-    public void newGame(SudokuGenerator.Difficulty difficulty) {
-        clear();
+    /**
+     * Adds a place to take ready puzzles from. Sources are asked in the order they were added.
+     */
+    public void addPuzzleSource(PuzzleSource source) {
+        puzzleSources.add(source);
+    }
 
-        SudokuGenerator generator = new SudokuGenerator();
-        SudokuGenerator.Board board = generator.generateSudoku(difficulty);
-        for (int j = 0; j < 9; ++j) {
-            for (int i = 0; i < 9; ++i) {
+    public static SudokuGenerator createGenerator() {
+        return createGenerator(SudokuGenerator.Board.SIZE);
+    }
+
+    public static SudokuGenerator createGenerator(int size) {
+        return new SudokuGenerator(SudokuGenerator.Engine.BITMASK, Runtime.getRuntime().availableProcessors(), size);
+    }
+
+    /**
+     * @return A puzzle that is ready right away, or null if no puzzle source has one.
+     */
+    public SudokuGenerator.Board takeReadyPuzzle(SudokuGenerator.Difficulty difficulty) {
+        return takeReadyPuzzle(difficulty, SudokuGenerator.Board.SIZE);
+    }
+
+    /**
+     * @return A puzzle of the given size that is ready right away, or null if no puzzle source has one.
+     * Puzzle sources only hold classic 9x9 puzzles.
+     */
+    public SudokuGenerator.Board takeReadyPuzzle(SudokuGenerator.Difficulty difficulty, int boardSize) {
+        if (boardSize != SudokuGenerator.Board.SIZE) {
+            return null;
+        }
+        for (PuzzleSource source : puzzleSources) {
+            SudokuGenerator.Board board = source.take(difficulty);
+            if (board != null) {
+                return board;
+            }
+        }
+        return null;
+    }
+
+    public boolean newGame(SudokuGenerator.Difficulty difficulty) {
+        return newGame(difficulty, SudokuGenerator.Board.SIZE);
+    }
+
+    /**
+     * Starts a game on a ready puzzle, or else generates one on the calling thread.
+     * @return false, leaving the game as it was, if the generation was cancelled or the thread interrupted.
+     */
+    public boolean newGame(SudokuGenerator.Difficulty difficulty, int boardSize) {
+        SudokuGenerator.Board board = takeReadyPuzzle(difficulty, boardSize);
+        if (board == null) {
+            board = createGenerator(boardSize).generateSudoku(difficulty);
+            if (board == null) {
+                return false;
+            }
+        }
+        newGame(board, difficulty);
+        return true;
+    }
+
+    /**
+     * Starts a game on the given puzzle, known to grade at the given difficulty.
+     */
+    public void newGame(SudokuGenerator.Board board, SudokuGenerator.Difficulty difficulty) {
+        newGame(board);
+        this.difficulty = difficulty;
+    }
+
+    /**
+     * Starts a game on a symmetry transform of the given puzzle, which has the same difficulty as the puzzle itself.
+     * @param transform Which transform, from 0 to SudokuGenerator.Board.transformCount(seed.getSize()) - 1.
+     */
+    public void newGame(SudokuGenerator.Board seed, long transform) {
+        newGame(seed.transform(transform));
+    }
+
+    /**
+     * Starts a game on the given puzzle. The new grid is filled in on the side and swapped in with a single
+     * assignment, so the game is never seen half way between the old puzzle and the new one.
+     */
+    public void newGame(SudokuGenerator.Board board) {
+        difficulty = null;
+        setSize(board.getSize());
+        Cell g[][] = emptyGrid();
+        for (int j = 0; j < size; ++j) {
+            for (int i = 0; i < size; ++i) {
                 int v = board.getNumber(i, j);
                 if (v != 0) {
-                    grid[i][j].value = v;
-                    grid[i][j].locked = true;
+                    g[i][j].value = v;
+                    g[i][j].locked = true;
                 }
             }
         }
+        grid = g;
+        updateCells();
 
 //        loadOld("0000L7L1L2L80L9L1L8000L70L50L200L5L800L300L50L6L40L70000L70L90000L40L1L30L800L500L8L900L20L60L4000L9L3L70L7L9L6L40000");
     }
 
+    /**
+     * Sets a value as the player, which also takes it out of the pencil marks of every cell sharing a unit with it.
+     * The whole move can be undone in one step.
+     */
     public void setValue(int x, int y, int v) {
         Cell cell = grid[x][y];
-        if (!cell.locked) {
-            cell.value = v;
+        if (cell.locked || (cell.value == v)) {
+            return;
         }
-        updateCells();
+        int old = cell.value;
+        long move = packMove(MOVE_VALUE, true, (y * size) + x, old, v, 0);
+        changeValue(x, y, v);
+        record(move);
+        if (old != 0) {
+            clearEliminations();
+        }
+        if (v != 0) {
+            removePencilFromPeers(x, y, v);
+        }
+    }
+
+    /**
+     * Gives back every candidate a hint ruled out, as part of the move in progress: the hints may have relied on a
+     * value that was just taken back.
+     */
+    private void clearEliminations() {
+        for (int k = 0; k < size * size; ++k) {
+            if (eliminated[k] != 0) {
+                record(packMove(MOVE_PENCIL, false, k, 0, 0, eliminated[k]) | MOVE_ELIMINATION
+                        | MOVE_ELIMINATION_CLEARED);
+                eliminated[k] = 0;
+            }
+        }
+    }
+
+    /**
+     * Pencils every candidate into every empty cell, replacing what was pencilled in before. One pass over the
+     * board, since the candidates of a cell come straight from the masks of its units.
+     */
+    public void autoPencil() {
+        boolean first = true;
+        for (int j = 0; j < size; ++j) {
+            for (int i = 0; i < size; ++i) {
+                Cell cell = grid[i][j];
+                if (!cell.locked && (cell.value == 0)) {
+                    if (changePencil(i, j, candidates(i, j), first)) {
+                        first = false;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Takes v out of the pencil marks of the cells sharing a unit with (x, y), as part of the move in progress.
+     */
+    private void removePencilFromPeers(int x, int y, int v) {
+        int bit = ~(1 << (v - 1));
+        for (int i = 0; i < size; ++i) {
+            changePencil(i, y, grid[i][y].pencil & bit, false);
+            changePencil(x, i, grid[x][i].pencil & bit, false);
+        }
+        int sx = (x / boxSize) * boxSize;
+        int sy = (y / boxSize) * boxSize;
+        for (int j = 0; j < boxSize; ++j) {
+            for (int i = 0; i < boxSize; ++i) {
+                changePencil(sx + i, sy + j, grid[sx + i][sy + j].pencil & bit, false);
+            }
+        }
+    }
+
+    /**
+     * Sets a cell's pencil marks and records the change.
+     * @param first If the change starts a new move, rather than being part of the one in progress.
+     * @return If the marks changed.
+     */
+    private boolean changePencil(int x, int y, int pencil, boolean first) {
+        Cell cell = grid[x][y];
+        if (cell.pencil == pencil) {
+            return false;
+        }
+        long move = packMove(MOVE_PENCIL, first, (y * size) + x, 0, 0, cell.pencil ^ pencil);
+        cell.pencil = pencil;
+        record(move);
+        return true;
+    }
+
+    public void setMoveListener(MoveListener listener) {
+        moveListener = listener;
     }
 
     public void togglePencil(int x, int y, int v) {
         Cell cell = grid[x][y];
         if (!cell.locked) {
-            cell.pencil[v - 1] = !cell.pencil[v - 1];
+            changePencil(x, y, cell.pencil ^ (1 << (v - 1)), true);
         }
-        updateCells();
     }
 
     public void clearPencil(int x, int y) {
         Cell cell = grid[x][y];
         if (!cell.locked) {
-            for (int p = 0; p < 9; ++p) {
-                cell.pencil[p] = false;
-            }
+            changePencil(x, y, 0, true);
         }
-        updateCells();
     }
 
-    public void updateCell(int x, int y) {
+    // ----------------------------------------------------------------------------------
+    // Undo / Redo
+
+    /**
+     * Packs one change to one cell:
+     *   bits 0-9    cell index, y * size + x
+     *   bits 10-14  old value
+     *   bits 15-19  new value
+     *   bits 20-44  pencil marks flipped
+     *   bit  45     first change of a move
+     *   bits 46-47  MOVE_VALUE or MOVE_PENCIL, or MOVE_UNDO and MOVE_REDO for the records a MoveListener gets
+     *   bit  48     MOVE_ELIMINATION, on a MOVE_PENCIL change whose bits are candidates a hint ruled out rather
+     *               than pencil marks
+     *   bit  49     MOVE_ELIMINATION_CLEARED, on a MOVE_ELIMINATION change that gave the candidates back
+     */
+    static long packMove(int type, boolean first, int cell, int oldValue, int newValue, int pencilDelta) {
+        return ((long) type << 46) | (first ? MOVE_FIRST : 0) | ((long) pencilDelta << 20)
+                | (newValue << 15) | (oldValue << 10) | cell;
+    }
+
+    /**
+     * Adds a change, already made to the board, after the ones applied, which drops whatever could have been
+     * redone. When the ring is full the oldest move goes, all of its changes at once.
+     */
+    private void record(long move) {
+        historyCount = historyPosition;
+        if (historyCount == HISTORY_CAPACITY) {
+            do {
+                historyStart = (historyStart + 1) % HISTORY_CAPACITY;
+                historyCount--;
+            } while ((historyCount > 0) && ((history[historyStart] & MOVE_FIRST) == 0));
+        }
+        history[(historyStart + historyCount) % HISTORY_CAPACITY] = move;
+        historyCount++;
+        historyPosition = historyCount;
+        if (moveListener != null) {
+            moveListener.onMove(move);
+        }
+    }
+
+    public void clearHistory() {
+        historyStart = 0;
+        historyCount = 0;
+        historyPosition = 0;
+    }
+
+    public boolean canUndo() {
+        return historyPosition > 0;
+    }
+
+    public boolean canRedo() {
+        return historyPosition < historyCount;
+    }
+
+    /**
+     * Takes back the last move, all the cells it changed at once.
+     * @return false if there was nothing to undo.
+     */
+    public boolean undo() {
+        if (!canUndo()) {
+            return false;
+        }
+        long move;
+        do {
+            historyPosition--;
+            move = history[(historyStart + historyPosition) % HISTORY_CAPACITY];
+            applyMove(move, false);
+        } while ((move & MOVE_FIRST) == 0);
+        if (moveListener != null) {
+            moveListener.onMove(MOVE_UNDO_RECORD);
+        }
+        return true;
+    }
+
+    /**
+     * Plays the last move undone again.
+     * @return false if there was nothing to redo.
+     */
+    public boolean redo() {
+        if (!canRedo()) {
+            return false;
+        }
+        do {
+            applyMove(history[(historyStart + historyPosition) % HISTORY_CAPACITY], true);
+            historyPosition++;
+        } while (canRedo() && ((history[(historyStart + historyPosition) % HISTORY_CAPACITY] & MOVE_FIRST) == 0));
+        if (moveListener != null) {
+            moveListener.onMove(MOVE_REDO_RECORD);
+        }
+        return true;
+    }
+
+    /**
+     * Plays a move as a MoveListener was given it.
+     * @return false if the move does not fit this board, in which case nothing is changed.
+     */
+    public boolean replayMove(long move) {
+        int type = (int) ((move >>> 46) & 3);
+        if (type == MOVE_UNDO) {
+            return undo();
+        } else if (type == MOVE_REDO) {
+            return redo();
+        }
+        int cell = (int) (move & 0x3ff);
+        int oldValue = (int) ((move >>> 10) & 0x1f);
+        int newValue = (int) ((move >>> 15) & 0x1f);
+        int pencilDelta = (int) ((move >>> 20) & 0x1ffffff);
+        long flags = move >>> 48;
+        if ((flags > 3) || (flags == 2) || ((flags != 0) && (type != MOVE_PENCIL)) || (cell >= size * size) || (oldValue > size)
+                || (newValue > size) || ((pencilDelta >>> size) != 0)) {
+            return false;
+        }
+        if ((type == MOVE_VALUE) && (grid[cell % size][cell / size].value != oldValue)) {
+            return false;
+        }
+        applyMove(move, true);
+        record(move);
+        return true;
+    }
+
+    public int historyCount() {
+        return historyCount;
+    }
+
+    public int historyPosition() {
+        return historyPosition;
+    }
+
+    /**
+     * @param index From 0 for the oldest change kept up to historyCount() - 1.
+     */
+    public long historyMove(int index) {
+        return history[(historyStart + index) % HISTORY_CAPACITY];
+    }
+
+    /**
+     * Puts back an undo history saved with historyCount(), historyPosition() and historyMove(), after the game
+     * it belongs to has been loaded.
+     * @return false if it can't be a history, in which case the history is left empty.
+     */
+    public boolean restoreHistory(long moves[], int count, int position) {
+        clearHistory();
+        if ((count < 0) || (count > HISTORY_CAPACITY) || (position < 0) || (position > count)
+                || ((count > 0) && ((moves[0] & MOVE_FIRST) == 0))) {
+            return false;
+        }
+        System.arraycopy(moves, 0, history, 0, count);
+        historyCount = count;
+        historyPosition = position;
+        return true;
+    }
+
+    private void applyMove(long move, boolean forward) {
+        int cell = (int) (move & 0x3ff);
+        int x = cell % size;
+        int y = cell / size;
+        int delta = (int) ((move >>> 20) & 0x1ffffff);
+        if ((int) ((move >>> 46) & 3) == MOVE_VALUE) {
+            int v = (int) ((move >>> (forward ? 15 : 10)) & 0x1f);
+            changeValue(x, y, v);
+        } else if ((move & MOVE_ELIMINATION) != 0) {
+            // Set and cleared rather than flipped, so that undoing a hint older than the journal's last snapshot,
+            // which doesn't hold the eliminations, can't rule its candidates out
+            boolean set = forward == ((move & MOVE_ELIMINATION_CLEARED) == 0);
+            eliminated[cell] = set ? (eliminated[cell] | delta) : (eliminated[cell] & ~delta);
+        } else {
+            grid[x][y].pencil ^= delta;
+        }
+    }
+
+    private int box(int x, int y) {
+        return ((y / boxSize) * boxSize) + (x / boxSize);
+    }
+
+    /**
+     * Sets a cell's value and brings the unit counts, the error flags of the cells sharing a unit with it,
+     * and solved up to date.
+     */
+    private void changeValue(int x, int y, int v) {
         Cell cell = grid[x][y];
+        int old = cell.value;
+        if (old == v) {
+            return;
+        }
+        count(x, y, old, -1);
+        cell.value = v;
+        count(x, y, v, 1);
 
-//        boolean taken[] = new boolean[9];
-        for (int i = 0; i < 9; ++i) {
-            if (x != i) {
-                int v = grid[i][y].value;
-                if (v > 0) {
-//                    taken[v - 1] = true;
-                    if (v == cell.value) {
-                        grid[i][y].error = true;
-                        cell.error = true;
-                    }
-                }
+        // Only cells holding the old or the new digit can have changed their error flag
+        updatePeers(x, y, old);
+        updatePeers(x, y, v);
+        solved = (filled == size * size) && (duplicates == 0);
+    }
+
+    private void count(int x, int y, int v, int delta) {
+        if (v == 0) {
+            return;
+        }
+        int b = box(x, y);
+        duplicates += count(rowCounts[y], v, delta) + count(colCounts[x], v, delta) + count(boxCounts[b], v, delta);
+        digitCounts[v] += delta;
+        filled += delta;
+
+        int bit = 1 << (v - 1);
+        rowMasks[y] = (rowCounts[y][v] > 0) ? (rowMasks[y] | bit) : (rowMasks[y] & ~bit);
+        colMasks[x] = (colCounts[x][v] > 0) ? (colMasks[x] | bit) : (colMasks[x] & ~bit);
+        boxMasks[b] = (boxCounts[b][v] > 0) ? (boxMasks[b] | bit) : (boxMasks[b] & ~bit);
+    }
+
+    /**
+     * @return How much the unit's duplicate count changed.
+     */
+    private static int count(int counts[], int v, int delta) {
+        int before = counts[v];
+        counts[v] += delta;
+        if (delta > 0) {
+            return (before > 0) ? 1 : 0;
+        }
+        return (before > 1) ? -1 : 0;
+    }
+
+    private void updatePeers(int x, int y, int v) {
+        if (v == 0) {
+            return;
+        }
+        for (int i = 0; i < size; ++i) {
+            if (grid[i][y].value == v) {
+                updateCell(i, y);
             }
-            if (y != i) {
-                int v = grid[x][i].value;
-                if (v > 0) {
-//                    taken[v - 1] = true;
-                    if (v == cell.value) {
-                        grid[x][i].error = true;
-                        cell.error = true;
-                    }
-                }
+            if (grid[x][i].value == v) {
+                updateCell(x, i);
             }
         }
-
-        int sx = (x / 3) * 3;
-        int sy = (y / 3) * 3;
-        for (int j = 0; j < 3; ++j) {
-            for (int i = 0; i < 3; ++i) {
-                if ((x != (sx + i)) && (y != (sy + j))) {
-                    int v = grid[sx + i][sy + j].value;
-                    if (v > 0) {
-//                        taken[v - 1] = true;
-                        if (v == cell.value) {
-                            grid[sx + i][sy + j].error = true;
-                            cell.error = true;
-                        }
-                    }
+        int sx = (x / boxSize) * boxSize;
+        int sy = (y / boxSize) * boxSize;
+        for (int j = 0; j < boxSize; ++j) {
+            for (int i = 0; i < boxSize; ++i) {
+                if (grid[sx + i][sy + j].value == v) {
+                    updateCell(sx + i, sy + j);
                 }
             }
         }
+        updateCell(x, y);
     }
 
+    /**
+     * Sets the cell's error flag from the unit counts: a value is an error when its row, column or box holds
+     * it more than once.
+     */
+    public void updateCell(int x, int y) {
+        Cell cell = grid[x][y];
+        int v = cell.value;
+        cell.error = (v != 0) && ((rowCounts[y][v] > 1) || (colCounts[x][v] > 1) || (boxCounts[box(x, y)][v] > 1));
+    }
+
+    /**
+     * Rebuilds the unit counts, every error flag and solved from scratch, and forgets the undo history. Only
+     * needed after the grid has been replaced or written to directly; single edits keep everything up to date
+     * on their own.
+     */
     public void updateCells() {
-        for (int j = 0; j < 9; ++j) {
-            for (int i = 0; i < 9; ++i) {
-                grid[i][j].error = false;
+        clearHistory();
+        for (int u = 0; u < size; ++u) {
+            for (int v = 0; v <= size; ++v) {
+                rowCounts[u][v] = 0;
+                colCounts[u][v] = 0;
+                boxCounts[u][v] = 0;
+            }
+        }
+        for (int v = 0; v <= size; ++v) {
+            digitCounts[v] = 0;
+        }
+        Arrays.fill(rowMasks, 0);
+        Arrays.fill(colMasks, 0);
+        Arrays.fill(boxMasks, 0);
+        Arrays.fill(eliminated, 0);
+        filled = 0;
+        duplicates = 0;
+
+        for (int j = 0; j < size; ++j) {
+            for (int i = 0; i < size; ++i) {
+                count(i, j, grid[i][j].value, 1);
             }
         }
-        for (int j = 0; j < 9; ++j) {
-            for (int i = 0; i < 9; ++i) {
+        for (int j = 0; j < size; ++j) {
+            for (int i = 0; i < size; ++i) {
                 updateCell(i, j);
             }
         }
+        solved = (filled == size * size) && (duplicates == 0);
+        if (moveListener != null) {
+            moveListener.onReset();
+        }
+    }
 
-        solved = true;
-        for (int j = 0; j < 9; ++j) {
-            for (int i = 0; i < 9; ++i) {
-                if(grid[i][j].error) {
-                    solved = false;
-                }
-                if(grid[i][j].value == 0) {
-                    solved = false;
-                }
+    // ----------------------------------------------------------------------------------
+    // Candidates and hints
+
+    /**
+     * @return The values that could still go in a cell, bit (v - 1) standing for v, or 0 if it holds a value.
+     */
+    public int candidates(int x, int y) {
+        if (grid[x][y].value != 0) {
+            return 0;
+        }
+        int taken = rowMasks[y] | colMasks[x] | boxMasks[box(x, y)];
+        return ((1 << size) - 1) & ~taken & ~eliminated[y * size + x];
+    }
+
+    /**
+     * Finds the next move the easiest technique can make from the candidates as they stand, which is either a
+     * value to fill in or candidates to rule out. The player's pencil marks are not looked at. Values the player
+     * got wrong without breaking a rule can lead it astray, like they would lead the player.
+     * @return The hint, or null if the board is solved, has conflicts, or none of the techniques gets anywhere.
+     */
+    public Hint hint() {
+        if (solved || (duplicates > 0)) {
+            return null;
+        }
+        final int cells = size * size;
+        if ((hintValues == null) || (hintValues.length != cells)) {
+            hintGrader = new DifficultyGrader(size);
+            hintValues = new int[cells];
+            hintCandidates = new int[cells];
+        }
+        for (int j = 0; j < size; ++j) {
+            for (int i = 0; i < size; ++i) {
+                hintValues[j * size + i] = grid[i][j].value;
+                hintCandidates[j * size + i] = candidates(i, j);
             }
         }
+
+        hintGrader.load(hintValues, hintCandidates);
+        DifficultyGrader.Technique technique = hintGrader.step();
+        if (technique == null) {
+            return null;
+        }
+        int cell = hintGrader.getLastCell();
+        if (cell >= 0) {
+            int x = cell % size;
+            int y = cell / size;
+            return new Hint(technique, x, y, hintGrader.getNumber(x, y), null);
+        }
+        int removed[] = new int[cells];
+        for (int k = 0; k < cells; ++k) {
+            removed[k] = hintCandidates[k] & ~hintGrader.getCandidates(k % size, k / size);
+        }
+        return new Hint(technique, -1, -1, 0, removed);
     }
 
-    public String save() {
-        String savedata = "";
-        try {
-            JSONArray cells = new JSONArray();
-            for (int j = 0; j < 9; ++j) {
-                for (int i = 0; i < 9; ++i) {
-                    Cell cell = grid[i][j];
-                    JSONObject jcell = new JSONObject();
-                    if (cell.locked)
-                        jcell.put("l", 1);
-                    jcell.put("v", cell.value);
-                    boolean needsPencil = false;
-                    for (int p = 0; p < 9; ++p) {
-                        if (cell.pencil[p]) {
-                            needsPencil = true;
-                            break;
-                        }
-                    }
-                    if (needsPencil) {
-                        JSONArray jpencil = new JSONArray();
-                        for (int p = 0; p < 9; ++p)
-                            jpencil.put(cell.pencil[p] ? 1 : 0);
-                        jcell.put("p", jpencil);
-                    }
-                    cells.put(jcell);
-                }
+    /**
+     * Plays a hint: fills in its value, or rules out its candidates for the following hints and takes them out
+     * of the pencil marks.
+     */
+    public void applyHint(Hint hint) {
+        if (hint.value != 0) {
+            setValue(hint.x, hint.y, hint.value);
+            return;
+        }
+        // The eliminations go in the undo history with the pencil marks they clear, so undoing the hint brings
+        // the candidates back too
+        boolean first = true;
+        for (int k = 0; k < hint.eliminations.length; ++k) {
+            int x = k % size;
+            int y = k / size;
+            int added = hint.eliminations[k] & ~eliminated[k];
+            if (added != 0) {
+                eliminated[k] |= added;
+                record(packMove(MOVE_PENCIL, first, k, 0, 0, added) | MOVE_ELIMINATION);
+                first = false;
             }
-            JSONObject o = new JSONObject();
-            o.put("cells", cells);
-            savedata = o.toString();
-        } catch (JSONException e) {
+            if (changePencil(x, y, grid[x][y].pencil & ~hint.eliminations[k], first)) {
+                first = false;
+            }
+        }
+    }
+
+    public String save() {
+        int length = saveBytes(saveBytes, 0);
+        saveChars[0] = SAVE_PREFIX;
+        int chars = Base64Codec.encode(saveBytes, 0, length, saveChars, 1);
+        return new String(saveChars, 0, chars + 1);
+    }
+
+    /**
+     * @return The number of bytes in the binary save format for a board of the given size.
+     */
+    static int saveLength(int boardSize) {
+        int cells = boardSize * boardSize;
+        return 2 + cells + ((cells + 7) / 8) + ((cells * boardSize + 7) / 8);
+    }
+
+    /**
+     * Writes the binary save format.
+     * @param out Must have room for saveLength(size) bytes from offset.
+     * @return The number of bytes written.
+     */
+    public int saveBytes(byte out[], int offset) {
+        final int length = startSave(out, offset, size);
+        for (int k = 0; k < size * size; ++k) {
+            Cell cell = grid[k % size][k / size];
+            saveCell(out, offset, size, k, cell.value, cell.locked, cell.pencil);
+        }
+        return length;
+    }
+
+    /**
+     * Copies the board and undo history, for saving away from the UI thread. Only the arrays are copied; the
+     * serializing is left to Snapshot.saveBytes().
+     */
+    public Snapshot snapshot() {
+        final int cells[] = new int[size * size];
+        for (int k = 0; k < cells.length; ++k) {
+            Cell cell = grid[k % size][k / size];
+            cells[k] = cell.value | (cell.pencil << 5) | (cell.locked ? SNAPSHOT_LOCKED : 0);
         }
-        return savedata;
+        final long moves[] = new long[historyCount];
+        final int wrapped = Math.min(historyCount, HISTORY_CAPACITY - historyStart);
+        System.arraycopy(history, historyStart, moves, 0, wrapped);
+        System.arraycopy(history, 0, moves, wrapped, historyCount - wrapped);
+        return new Snapshot(size, cells, moves, historyPosition);
     }
 
+    /**
+     * Clears the saveLength(boardSize) bytes of a save and writes its header.
+     * @return The length of the save.
+     */
+    private static int startSave(byte out[], int offset, int boardSize) {
+        final int length = saveLength(boardSize);
+        for (int i = offset; i < offset + length; ++i) {
+            out[i] = 0;
+        }
+        out[offset] = SAVE_VERSION;
+        out[offset + 1] = (byte) boardSize;
+        return length;
+    }
+
+    private static void saveCell(byte out[], int offset, int boardSize, int k, int value, boolean locked, int pencil) {
+        final int cells = boardSize * boardSize;
+        final int lockedOffset = offset + 2 + cells;
+        final int pencilOffset = lockedOffset + ((cells + 7) / 8);
+        out[offset + 2 + k] = (byte) value;
+        if (locked) {
+            out[lockedOffset + (k >> 3)] |= (byte) (1 << (k & 7));
+        }
+        putBits(out, pencilOffset, k * boardSize, boardSize, pencil);
+    }
+
+    /**
+     * Accepts everything the game has ever saved: the Base64 binary format written by save(), the older
+     * JSON format and the original loadOld() strings.
+     */
     public void load(String s) {
         if (s.length() < 1)
             return;
 
+        difficulty = null;
+
+        switch (s.charAt(0)) {
+            case SAVE_PREFIX:
+                int length = Base64Codec.decode(s, 1, s.length() - 1, saveBytes, 0);
+                if ((length < 0) || !loadBytes(saveBytes, 0, length)) {
+                    clear();
+                }
+                break;
+            case '{':
+                loadJson(s);
+                break;
+            default:
+                loadOld(s);
+                break;
+        }
+    }
+
+    /**
+     * Reads the binary save format, switching to the size of the saved board.
+     * @return false, leaving the game untouched, if the data is not a valid save.
+     */
+    public boolean loadBytes(byte in[], int offset, int length) {
+        if ((length < 2) || (in[offset] != SAVE_VERSION)) {
+            return false;
+        }
+        final int savedSize = in[offset + 1];
+        if (!SudokuGenerator.Board.isValidSize(savedSize) || (length < saveLength(savedSize))) {
+            return false;
+        }
+        final int cells = savedSize * savedSize;
+        for (int k = 0; k < cells; ++k) {
+            int v = in[offset + 2 + k];
+            if ((v < 0) || (v > savedSize)) {
+                return false;
+            }
+        }
+
+        if ((savedSize != size) || (grid == null)) {
+            setSize(savedSize);
+            grid = emptyGrid();
+        }
+        final int lockedOffset = offset + 2 + cells;
+        final int pencilOffset = lockedOffset + ((cells + 7) / 8);
+        for (int k = 0; k < cells; ++k) {
+            Cell cell = grid[k % size][k / size];
+            cell.value = in[offset + 2 + k];
+            cell.locked = (in[lockedOffset + (k >> 3)] & (1 << (k & 7))) != 0;
+            cell.pencil = getBits(in, pencilOffset, k * size, size);
+            cell.error = false;
+        }
+        difficulty = null;
+        updateCells();
+        return true;
+    }
+
+    private static void putBits(byte out[], int offset, int bit, int count, int value) {
+        for (int i = 0; i < count; ++i, ++bit) {
+            if ((value & (1 << i)) != 0) {
+                out[offset + (bit >> 3)] |= (byte) (1 << (bit & 7));
+            }
+        }
+    }
+
+    private static int getBits(byte in[], int offset, int bit, int count) {
+        int value = 0;
+        for (int i = 0; i < count; ++i, ++bit) {
+            if ((in[offset + (bit >> 3)] & (1 << (bit & 7))) != 0) {
+                value |= 1 << i;
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Loads the JSON format that save() used to write.
+     */
+    private void loadJson(String s) {
+        setSize(SudokuGenerator.Board.SIZE);
         clear();
 
         try {
@@ -228,30 +1014,30 @@ public class SudokuGame {
                         for (int p = 0; p < 9; ++p) {
                             int pset = jpencil.optInt(p, 0);
                             if (pset == 1) {
-                                cell.pencil[p] = true;
+                                cell.pencil |= 1 << p;
                             }
                         }
                     }
                 }
             }
         } catch (JSONException e) {
-            newGame();
+            setSize(SudokuGenerator.Board.SIZE);
+            grid = emptyGrid();
         }
         updateCells();
     }
 
+    /**
+     * @return true if no cell holds a value, as after the constructor or a save that could not be read.
+     */
+    public boolean isEmpty() {
+        return filled == 0;
+    }
+
     public boolean[] done() {
-        boolean d[] = new boolean[9];
-        int counts[] = new int[9];
-        for (int j = 0; j < 9; ++j) {
-            for (int i = 0; i < 9; ++i) {
-                if(grid[i][j].value != 0) {
-                    ++counts[grid[i][j].value-1];
-                }
-            }
-        }
-        for(int i = 0; i < 9; ++i) {
-            if(counts[i] == 9) {
+        boolean d[] = new boolean[size];
+        for(int i = 0; i < size; ++i) {
+            if(digitCounts[i + 1] == size) {
                 d[i] = true;
             }
         }
@@ -262,6 +1048,7 @@ public class SudokuGame {
         if (s.length() < 1)
             return;
 
+        setSize(SudokuGenerator.Board.SIZE);
         clear();
 
         int index = 0;
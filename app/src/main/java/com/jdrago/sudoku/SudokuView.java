@@ -6,6 +6,7 @@ import android.graphics.Canvas;
 import android.graphics.Paint;
 import android.graphics.Rect;
 import android.graphics.Typeface;
+import android.os.AsyncTask;
 import android.support.v7.app.AlertDialog;
 import android.util.AttributeSet;
 import android.util.Log;
@@ -13,24 +14,26 @@ import android.view.MotionEvent;
 import android.view.View;
 import android.widget.ArrayAdapter;
 
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
 public class SudokuView extends View {
     private static String TAG = "SudokuView";
 
     // ----------------------------------------------------------------------------------
     // Render
 
-    static final int VALUE_POS_X = 1;
-    static final int VALUE_POS_Y = 10;
-    static final int VALUE_CLEAR_POS_X = 2;
-    static final int VALUE_CLEAR_POS_Y = 13;
+    // Board sizes offered for a new game, and what the dialog calls them.
+    static final int BOARD_SIZES[] = {9, 16, 25};
+    static final String BOARD_SIZE_NAMES[] = {"", " 16x16", " 25x25"};
+    static final int DIFFICULTY_CHOICES = 4; // Difficulties offered for each board size
+    static final String DIFFICULTY_NAMES[] = {"Easy", "Medium", "Hard", "Extreme"}; // By Difficulty ordinal
 
-    static final int PENCIL_POS_X = 5;
-    static final int PENCIL_POS_Y = 10;
-    static final int PENCIL_CLEAR_POS_X = 6;
-    static final int PENCIL_CLEAR_POS_Y = 13;
+    // The longest a new game waits for the generator. After that it starts on the hardest puzzle found so far.
+    static final long NEW_GAME_TIMEOUT_MS = 5000;
 
-    static final int NEWGAME_POS_X = 4;
-    static final int NEWGAME_POS_Y = 13;
+    // The pen value of the clear buttons.
+    static final int PEN_CLEAR = -1;
 
     static final int COLOR_VALUE = 0xff000000;
     static final int COLOR_PENCIL = 0xff0000ff;
@@ -80,11 +83,33 @@ public class SudokuView extends View {
 
     float cellSize_;
 
+    // Layout, in cells, for a board of boardSize_ cells on a side. The value and pencil pads sit under the board,
+    // each boxSize_ cells square, with the clear buttons and the new game button in the row below them.
+    int boardSize_;
+    int boxSize_;
+    int rows_;
+    int valuePosX_;
+    int valuePosY_;
+    int valueClearPosX_;
+    int valueClearPosY_;
+    int pencilPosX_;
+    int pencilPosY_;
+    int pencilClearPosX_;
+    int pencilClearPosY_;
+    int autoPencilPosX_;
+    int autoPencilPosY_;
+    int undoPosX_;
+    int undoPosY_;
+    int redoPosX_;
+    int redoPosY_;
+    int newGamePosX_;
+    int newGamePosY_;
+
     // ----------------------------------------------------------------------------------
     // Actions
 
     public enum ActionType {
-        SELECT, PENCIL, VALUE, NEWGAME;
+        SELECT, PENCIL, VALUE, NEWGAME, AUTOPENCIL, UNDO, REDO;
     }
 
     public class Action {
@@ -106,6 +131,7 @@ public class SudokuView extends View {
     // Game
 
     SudokuGame game_;
+    NewGameTask newGameTask_;
     int penValue_;
     boolean isPencil_;
     int highlightX_;
@@ -119,54 +145,90 @@ public class SudokuView extends View {
 
         cellSize_ = 0;
 
-        initActions();
-
         game_ = new SudokuGame();
         penValue_ = 0;
         highlightX_ = -1;
         highlightY_ = -1;
 
+        initActions();
         calcSizes();
     }
 
+    /**
+     * Lays the screen out for the size of the current game. Does nothing if it already is.
+     */
     public void initActions() {
-        actions_ = new Action[9 * 15];
+        if ((actions_ != null) && (boardSize_ == game_.size)) {
+            return;
+        }
+        boardSize_ = game_.size;
+        boxSize_ = game_.boxSize;
+        rows_ = boardSize_ + boxSize_ + 3;
+        valuePosX_ = 1;
+        valuePosY_ = boardSize_ + 1;
+        pencilPosX_ = valuePosX_ + boxSize_ + 1;
+        pencilPosY_ = valuePosY_;
+        valueClearPosX_ = valuePosX_ + (boxSize_ / 2);
+        valueClearPosY_ = valuePosY_ + boxSize_ + 1;
+        pencilClearPosX_ = pencilPosX_ + (boxSize_ / 2);
+        pencilClearPosY_ = valueClearPosY_;
+        autoPencilPosX_ = pencilClearPosX_ + 1;
+        autoPencilPosY_ = pencilClearPosY_;
+        undoPosX_ = valueClearPosX_ - 1;
+        undoPosY_ = valueClearPosY_;
+        redoPosX_ = valueClearPosX_ + 1;
+        redoPosY_ = valueClearPosY_;
+        newGamePosX_ = valuePosX_ + boxSize_;
+        newGamePosY_ = valueClearPosY_;
+        cellSize_ = 0;
+
+        actions_ = new Action[boardSize_ * rows_];
 
-        for (int j = 0; j < 9; ++j) {
-            for (int i = 0; i < 9; ++i) {
-                int index = (j * 9) + i;
+        for (int j = 0; j < boardSize_; ++j) {
+            for (int i = 0; i < boardSize_; ++i) {
+                int index = (j * boardSize_) + i;
                 actions_[index] = new Action(ActionType.SELECT, i, j);
             }
         }
 
-        for (int j = 0; j < 3; ++j) {
-            for (int i = 0; i < 3; ++i) {
-                int index = ((VALUE_POS_Y + j) * 9) + (VALUE_POS_X + i);
-                actions_[index] = new Action(ActionType.VALUE, 1 + (j * 3) + i, 0);
+        for (int j = 0; j < boxSize_; ++j) {
+            for (int i = 0; i < boxSize_; ++i) {
+                int index = ((valuePosY_ + j) * boardSize_) + (valuePosX_ + i);
+                actions_[index] = new Action(ActionType.VALUE, 1 + (j * boxSize_) + i, 0);
             }
         }
 
-        for (int j = 0; j < 3; ++j) {
-            for (int i = 0; i < 3; ++i) {
-                int index = ((PENCIL_POS_Y + j) * 9) + (PENCIL_POS_X + i);
-                actions_[index] = new Action(ActionType.PENCIL, 1 + (j * 3) + i, 0);
+        for (int j = 0; j < boxSize_; ++j) {
+            for (int i = 0; i < boxSize_; ++i) {
+                int index = ((pencilPosY_ + j) * boardSize_) + (pencilPosX_ + i);
+                actions_[index] = new Action(ActionType.PENCIL, 1 + (j * boxSize_) + i, 0);
             }
         }
 
         // Value clear button
-        int index = (VALUE_CLEAR_POS_Y * 9) + VALUE_CLEAR_POS_X;
-        actions_[index] = new Action(ActionType.VALUE, 10, 0);
+        int index = (valueClearPosY_ * boardSize_) + valueClearPosX_;
+        actions_[index] = new Action(ActionType.VALUE, PEN_CLEAR, 0);
 
         // Pencil clear button
-        index = (PENCIL_CLEAR_POS_Y * 9) + PENCIL_CLEAR_POS_X;
-        actions_[index] = new Action(ActionType.PENCIL, 10, 0);
+        index = (pencilClearPosY_ * boardSize_) + pencilClearPosX_;
+        actions_[index] = new Action(ActionType.PENCIL, PEN_CLEAR, 0);
+
+        // Auto pencil button
+        index = (autoPencilPosY_ * boardSize_) + autoPencilPosX_;
+        actions_[index] = new Action(ActionType.AUTOPENCIL, 0, 0);
+
+        // Undo and redo buttons, either side of the value clear button
+        index = (undoPosY_ * boardSize_) + undoPosX_;
+        actions_[index] = new Action(ActionType.UNDO, 0, 0);
+        index = (redoPosY_ * boardSize_) + redoPosX_;
+        actions_[index] = new Action(ActionType.REDO, 0, 0);
 
         // New Game button
-        index = (NEWGAME_POS_Y * 9) + NEWGAME_POS_X;
+        index = (newGamePosY_ * boardSize_) + newGamePosX_;
         actions_[index] = new Action(ActionType.NEWGAME, 0, 0);
 
         // Highlight button
-//        index = ((VALUE_POS_Y + 3) * 9) + VALUE_POS_X + 1;
+//        index = ((valuePosY_ + boxSize_) * boardSize_) + valuePosX_ + 1;
 //        actions_[index] = new Action(ActionType.VALUE, 0, 0);
     }
 
@@ -180,6 +242,27 @@ public class SudokuView extends View {
     public void setGameState(String state) {
         Log.d(TAG, "setGameState");
         game_.load(state);
+        initActions();
+    }
+
+    /**
+     * Loads the game from a journal, see GameJournal.restore().
+     */
+    public boolean restoreGame(GameJournal journal) throws IOException {
+        boolean restored = journal.restore(game_);
+        initActions();
+        return restored;
+    }
+
+    /**
+     * Has the journal record every move made from now on.
+     */
+    public void attachJournal(GameJournal journal) {
+        journal.attach(game_);
+    }
+
+    public void addPuzzleSource(PuzzleSource source) {
+        game_.addPuzzleSource(source);
     }
 
     public void newGame() {
@@ -188,10 +271,11 @@ public class SudokuView extends View {
         AlertDialog.Builder builderSingle = new AlertDialog.Builder(getContext());
         builderSingle.setTitle("New Game: Select Difficulty:");
         final ArrayAdapter<String> arrayAdapter = new ArrayAdapter<String>(getContext(), android.R.layout.select_dialog_singlechoice);
-        arrayAdapter.add("Easy");
-        arrayAdapter.add("Medium");
-        arrayAdapter.add("Hard");
-//        arrayAdapter.add("Extreme");
+        for (String sizeName : BOARD_SIZE_NAMES) {
+            for (int i = 0; i < DIFFICULTY_CHOICES; ++i) {
+                arrayAdapter.add(DIFFICULTY_NAMES[i] + sizeName);
+            }
+        }
         builderSingle.setNegativeButton("cancel", new DialogInterface.OnClickListener() {
             @Override
             public void onClick(DialogInterface dialog, int which) {
@@ -202,7 +286,8 @@ public class SudokuView extends View {
             @Override
             public void onClick(DialogInterface dialog, int which) {
                 SudokuGenerator.Difficulty difficulty;
-                switch (which) {
+                int boardSize = BOARD_SIZES[which / DIFFICULTY_CHOICES];
+                switch (which % DIFFICULTY_CHOICES) {
                     case 0:
                         difficulty = SudokuGenerator.Difficulty.EASY;
                         break;
@@ -212,24 +297,159 @@ public class SudokuView extends View {
                     case 2:
                         difficulty = SudokuGenerator.Difficulty.HARD;
                         break;
-//                    case 3:
-//                        difficulty = SudokuGenerator.Difficulty.EXTREME;
-//                        break;
+                    case 3:
+                        difficulty = SudokuGenerator.Difficulty.EXTREME;
+                        break;
                     default:
                         difficulty = SudokuGenerator.Difficulty.EASY;
                         break;
                 }
                 dialog.dismiss();
-                game_.newGame(difficulty);
-                penValue_ = 0;
-                highlightX_ = -1;
-                highlightY_ = -1;
-                invalidate();
+                startNewGame(difficulty, boardSize);
             }
         });
         builderSingle.show();
     }
 
+    /**
+     * Starts a game on a ready puzzle right away, or else generates one in the background.
+     */
+    public void startNewGame(SudokuGenerator.Difficulty difficulty, int boardSize) {
+        SudokuGenerator.Board board = game_.takeReadyPuzzle(difficulty, boardSize);
+        if (board != null) {
+            startGame(board, difficulty);
+        } else {
+            cancelNewGame();
+            newGameTask_ = new NewGameTask(difficulty, boardSize);
+            newGameTask_.execute();
+        }
+    }
+
+    /**
+     * @return true if there is no game yet, or the saved one could not be read.
+     */
+    public boolean isGameEmpty() {
+        return game_.isEmpty();
+    }
+
+    public void startGame(SudokuGenerator.Board board, SudokuGenerator.Difficulty difficulty) {
+        game_.newGame(board, difficulty);
+        initActions();
+        penValue_ = 0;
+        highlightX_ = -1;
+        highlightY_ = -1;
+        invalidate();
+    }
+
+    public void cancelNewGame() {
+        if (newGameTask_ != null) {
+            newGameTask_.abort();
+            newGameTask_ = null;
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        cancelNewGame();
+        super.onDetachedFromWindow();
+    }
+
+    // ----------------------------------------------------------------------------------
+    // Generation
+
+    /**
+     * Generates a puzzle off the UI thread while a dialog shows how it is going. The game is only
+     * touched once the puzzle is ready, back on the UI thread.
+     */
+    private class NewGameTask extends AsyncTask<Void, Integer, SudokuGenerator.Result> implements SudokuGenerator.ProgressListener {
+        private final SudokuGenerator.Difficulty difficulty_;
+        private final int boardSize_;
+        private final SudokuGenerator generator_;
+        private final AlertDialog dialog_;
+
+        NewGameTask(SudokuGenerator.Difficulty difficulty, int boardSize) {
+            difficulty_ = difficulty;
+            boardSize_ = boardSize;
+            generator_ = SudokuGame.createGenerator(boardSize);
+            generator_.setProgressListener(this);
+
+            dialog_ = new AlertDialog.Builder(getContext()).create();
+            dialog_.setTitle("Generating...");
+            dialog_.setMessage("Tried 0 puzzles.");
+            dialog_.setCancelable(false);
+            dialog_.setButton(AlertDialog.BUTTON_NEGATIVE, "Cancel",
+                    new DialogInterface.OnClickListener() {
+                        public void onClick(DialogInterface dialog, int which) {
+                            cancelNewGame();
+                        }
+                    });
+        }
+
+        void abort() {
+            generator_.cancel();
+            cancel(false);
+        }
+
+        @Override
+        protected void onPreExecute() {
+            dialog_.show();
+        }
+
+        @Override
+        protected SudokuGenerator.Result doInBackground(Void... params) {
+            SudokuGenerator.Result result = generator_.generateSudoku(difficulty_, NEW_GAME_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            if (result.timedOut) {
+                Log.d(TAG, "new game timed out, settling for " + result.difficulty);
+                if ((result.board == null) && !isCancelled()) {
+                    result = fallback();
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Nothing was graded before the deadline. Settles for a ready puzzle of an easier difficulty, or else an
+         * easy one, which the first attempt almost always reaches, under a second deadline. The puzzle sources
+         * are all safe to take from on this thread.
+         */
+        private SudokuGenerator.Result fallback() {
+            SudokuGenerator.Difficulty difficulties[] = SudokuGenerator.Difficulty.values();
+            for (int d = difficulty_.ordinal() - 1; d >= 0; --d) {
+                SudokuGenerator.Board board = game_.takeReadyPuzzle(difficulties[d], boardSize_);
+                if (board != null) {
+                    return new SudokuGenerator.Result(board, difficulties[d], true);
+                }
+            }
+            return generator_.generateSudoku(SudokuGenerator.Difficulty.EASY, NEW_GAME_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public void onProgress(int attempts, int lowestSudoku) {
+            publishProgress(attempts, lowestSudoku);
+        }
+
+        @Override
+        protected void onProgressUpdate(Integer... values) {
+            dialog_.setMessage("Tried " + values[0] + " puzzles, best so far has " + values[1] + " numbers.");
+        }
+
+        @Override
+        protected void onPostExecute(SudokuGenerator.Result result) {
+            dialog_.dismiss();
+            if (newGameTask_ == this) {
+                newGameTask_ = null;
+            }
+            if (result.board != null) {
+                startGame(result.board, result.difficulty);
+            }
+        }
+
+        @Override
+        protected void onCancelled(SudokuGenerator.Result result) {
+            dialog_.dismiss();
+        }
+    }
+
     // ----------------------------------------------------------------------------------
     // Render
 
@@ -238,7 +458,7 @@ public class SudokuView extends View {
         float h = getHeight();
         float smallest = (w < h) ? w : h;
 
-        float newCellSize = smallest / 9.0f;
+        float newCellSize = smallest / boardSize_;
         if (cellSize_ != newCellSize) {
             cellSize_ = newCellSize;
             for (Style s : Style.values()) {
@@ -254,10 +474,10 @@ public class SudokuView extends View {
             return true;
 
         // same section?
-        int sx1 = (x1 / 3) * 3;
-        int sy1 = (y1 / 3) * 3;
-        int sx2 = (x2 / 3) * 3;
-        int sy2 = (y2 / 3) * 3;
+        int sx1 = (x1 / boxSize_) * boxSize_;
+        int sy1 = (y1 / boxSize_) * boxSize_;
+        int sx2 = (x2 / boxSize_) * boxSize_;
+        int sy2 = (y2 / boxSize_) * boxSize_;
         if ((sx1 == sx2) && (sy1 == sy2)) {
             return true;
         }
@@ -281,10 +501,10 @@ public class SudokuView extends View {
         drawTextCentered(canvas, textStyle.paint, s, px + (cellSize_ / 2), py + (cellSize_ / 2));
     }
 
-    protected void drawGrid(Canvas canvas, int originX, int originY, int size, boolean solved) {
+    protected void drawGrid(Canvas canvas, int originX, int originY, int size, int boxSize, boolean solved) {
         for (int i = 0; i <= size; ++i) {
             Style style = solved ? Style.LINE_GREEN_THIN : Style.LINE_BLACK_THIN;
-            if ((size == 1) || (i % 3) == 0) {
+            if ((size == 1) || (i % boxSize) == 0) {
                 style = solved ? Style.LINE_GREEN_THICK : Style.LINE_BLACK_THICK;
             }
             // Horizontal lines
@@ -296,10 +516,11 @@ public class SudokuView extends View {
     }
 
     protected void onDraw(Canvas canvas) {
+        initActions();
         calcSizes();
 
-        for (int j = 0; j < 9; ++j) {
-            for (int i = 0; i < 9; ++i) {
+        for (int j = 0; j < boardSize_; ++j) {
+            for (int i = 0; i < boardSize_; ++i) {
                 SudokuGame.Cell cell = game_.grid[i][j];
 
                 Style backgroundStyle = null;
@@ -315,7 +536,7 @@ public class SudokuView extends View {
                         textStyle = Style.TEXT_VALUE;
                     }
                     if (cell.value > 0)
-                        text = Integer.toString(cell.value);
+                        text = String.valueOf(SudokuGenerator.Board.symbol(cell.value));
                 }
                 if (cell.locked) {
                     backgroundStyle = Style.BACKGROUND_LOCKED;
@@ -343,13 +564,13 @@ public class SudokuView extends View {
         }
 
         boolean done[] = game_.done();
-        for (int j = 0; j < 3; ++j) {
-            for (int i = 0; i < 3; ++i) {
-                int currentValue = (j * 3) + i + 1;
-                String currentValueString = Integer.toString(currentValue);
+        for (int j = 0; j < boxSize_; ++j) {
+            for (int i = 0; i < boxSize_; ++i) {
+                int currentValue = (j * boxSize_) + i + 1;
+                String currentValueString = String.valueOf(SudokuGenerator.Board.symbol(currentValue));
                 Style valueStyle = Style.TEXT_BUTTON_VALUE;
                 Style pencilStyle = Style.TEXT_BUTTON_PENCIL;
-                if (done[(j * 3) + i]) {
+                if (done[currentValue - 1]) {
                     valueStyle = Style.TEXT_BUTTON_DONE;
                     pencilStyle = Style.TEXT_BUTTON_DONE;
                 }
@@ -364,64 +585,55 @@ public class SudokuView extends View {
                     }
                 }
 
-                drawCell(canvas, VALUE_POS_X + i, VALUE_POS_Y + j, valueBackgroundStyle, valueStyle, currentValueString);
-                drawCell(canvas, PENCIL_POS_X + i, PENCIL_POS_Y + j, pencilBackgroundStyle, pencilStyle, currentValueString);
+                drawCell(canvas, valuePosX_ + i, valuePosY_ + j, valueBackgroundStyle, valueStyle, currentValueString);
+                drawCell(canvas, pencilPosX_ + i, pencilPosY_ + j, pencilBackgroundStyle, pencilStyle, currentValueString);
             }
         }
 
         Style valueBackgroundStyle = null;
         Style pencilBackgroundStyle = null;
-        if (penValue_ == 10) {
+        if (penValue_ == PEN_CLEAR) {
             if (isPencil_) {
                 pencilBackgroundStyle = Style.BACKGROUND_SELECTED;
             } else {
                 valueBackgroundStyle = Style.BACKGROUND_SELECTED;
             }
         }
-        drawCell(canvas, VALUE_CLEAR_POS_X, VALUE_CLEAR_POS_Y, valueBackgroundStyle, Style.TEXT_BUTTON_CLEAR, "C");
-        drawCell(canvas, PENCIL_CLEAR_POS_X, PENCIL_CLEAR_POS_Y, pencilBackgroundStyle, Style.TEXT_BUTTON_CLEAR, "C");
-
-        drawGrid(canvas, 0, 0, 9, game_.solved);
-        drawGrid(canvas, VALUE_POS_X, VALUE_POS_Y, 3, false);
-        drawGrid(canvas, PENCIL_POS_X, PENCIL_POS_Y, 3, false);
-        drawGrid(canvas, VALUE_CLEAR_POS_X, VALUE_CLEAR_POS_Y, 1, false);
-        drawGrid(canvas, PENCIL_CLEAR_POS_X, PENCIL_CLEAR_POS_Y, 1, false);
-        drawTextCentered(canvas, Style.TEXT_GRID_TITLE.paint, "Pens", ((VALUE_POS_X + 1) * cellSize_) + (cellSize_ / 2), (VALUE_POS_Y * cellSize_) - (cellSize_ / 4));
-        drawTextCentered(canvas, Style.TEXT_GRID_TITLE.paint, "Pencils", ((PENCIL_POS_X + 1) * cellSize_) + (cellSize_ / 2), (PENCIL_POS_Y * cellSize_) - (cellSize_ / 4));
+        drawCell(canvas, valueClearPosX_, valueClearPosY_, valueBackgroundStyle, Style.TEXT_BUTTON_CLEAR, "C");
+        drawCell(canvas, pencilClearPosX_, pencilClearPosY_, pencilBackgroundStyle, Style.TEXT_BUTTON_CLEAR, "C");
+        drawCell(canvas, autoPencilPosX_, autoPencilPosY_, null, Style.TEXT_BUTTON_PENCIL, "A");
+        drawCell(canvas, undoPosX_, undoPosY_, null, game_.canUndo() ? Style.TEXT_BUTTON_VALUE : Style.TEXT_BUTTON_DONE, "U");
+        drawCell(canvas, redoPosX_, redoPosY_, null, game_.canRedo() ? Style.TEXT_BUTTON_VALUE : Style.TEXT_BUTTON_DONE, "R");
+
+        drawGrid(canvas, 0, 0, boardSize_, boxSize_, game_.solved);
+        drawGrid(canvas, valuePosX_, valuePosY_, boxSize_, boxSize_, false);
+        drawGrid(canvas, pencilPosX_, pencilPosY_, boxSize_, boxSize_, false);
+        drawGrid(canvas, valueClearPosX_, valueClearPosY_, 1, 1, false);
+        drawGrid(canvas, pencilClearPosX_, pencilClearPosY_, 1, 1, false);
+        drawGrid(canvas, autoPencilPosX_, autoPencilPosY_, 1, 1, false);
+        drawGrid(canvas, undoPosX_, undoPosY_, 1, 1, false);
+        drawGrid(canvas, redoPosX_, redoPosY_, 1, 1, false);
+        drawTextCentered(canvas, Style.TEXT_GRID_TITLE.paint, "Pens", (valuePosX_ * cellSize_) + (boxSize_ * cellSize_ / 2), (valuePosY_ * cellSize_) - (cellSize_ / 4));
+        drawTextCentered(canvas, Style.TEXT_GRID_TITLE.paint, "Pencils", (pencilPosX_ * cellSize_) + (boxSize_ * cellSize_ / 2), (pencilPosY_ * cellSize_) - (cellSize_ / 4));
 
 //        Style highlightStyle = Style.TEXT_BUTTON_HIGHLIGHT;
 //        if (penValue_ == 0) {
 //            highlightStyle = Style.TEXT_BUTTON_ERROR;
 //        }
-//        drawCell(canvas, VALUE_POS_X + 1, VALUE_POS_Y + 3, null, highlightStyle, "Highlight");
-
-        drawCell(canvas, NEWGAME_POS_X, NEWGAME_POS_Y, null, Style.TEXT_BUTTON_NEWGAME, "New");
+//        drawCell(canvas, valuePosX_ + 1, valuePosY_ + boxSize_, null, highlightStyle, "Highlight");
+
+        drawCell(canvas, newGamePosX_, newGamePosY_, null, Style.TEXT_BUTTON_NEWGAME, "New");
+        if (game_.difficulty != null) {
+            // The difficulty the puzzle really grades at, which can be below the one picked if generation ran
+            // out of time
+            drawTextCentered(canvas, Style.TEXT_GRID_TITLE.paint, DIFFICULTY_NAMES[game_.difficulty.ordinal()],
+                    (newGamePosX_ * cellSize_) + (cellSize_ / 2), (newGamePosY_ * cellSize_) - (cellSize_ / 4));
+        }
     }
 
     // ----------------------------------------------------------------------------------
     // Input
 
-    public void confirmClear(final int x, final int y) {
-        AlertDialog alertDialog = new AlertDialog.Builder(getContext()).create();
-        alertDialog.setTitle("Clear cell?");
-        alertDialog.setMessage("Are you sure you want clear this cell?");
-        alertDialog.setButton(AlertDialog.BUTTON_POSITIVE, "OK",
-                new DialogInterface.OnClickListener() {
-                    public void onClick(DialogInterface dialog, int which) {
-                        dialog.dismiss();
-                        game_.clear(x, y);
-                        invalidate();
-                    }
-                });
-        alertDialog.setButton(AlertDialog.BUTTON_NEGATIVE, "Cancel",
-                new DialogInterface.OnClickListener() {
-                    public void onClick(DialogInterface dialog, int which) {
-                        dialog.dismiss();
-                    }
-                });
-        alertDialog.show();
-    }
-
     public boolean onTouchEvent(MotionEvent event) {
         if (event.getAction() == MotionEvent.ACTION_DOWN) {
             calcSizes();
@@ -429,8 +641,8 @@ public class SudokuView extends View {
             int x = (int) Math.floor(event.getX() / cellSize_);
             int y = (int) Math.floor(event.getY() / cellSize_);
 
-            if ((x < 9) && (y < 15)) {
-                int index = (y * 9) + x;
+            if ((x >= 0) && (y >= 0) && (x < boardSize_) && (y < rows_)) {
+                int index = (y * boardSize_) + x;
                 Action action = actions_[index];
                 if (action != null) {
                     Log.d(TAG, "selecting action " + action.type + " (" + action.x + "," + action.y + ")");
@@ -446,13 +658,13 @@ public class SudokuView extends View {
                                 }
                             } else {
                                 if (isPencil_) {
-                                    if (penValue_ == 10) {
+                                    if (penValue_ == PEN_CLEAR) {
                                         game_.clearPencil(action.x, action.y);
                                     } else {
                                         game_.togglePencil(action.x, action.y, penValue_);
                                     }
                                 } else {
-                                    if (penValue_ == 10) {
+                                    if (penValue_ == PEN_CLEAR) {
                                         game_.setValue(action.x, action.y, 0);
                                     } else {
                                         game_.setValue(action.x, action.y, penValue_);
@@ -471,6 +683,15 @@ public class SudokuView extends View {
                         case NEWGAME:
                             newGame();
                             break;
+                        case AUTOPENCIL:
+                            game_.autoPencil();
+                            break;
+                        case UNDO:
+                            game_.undo();
+                            break;
+                        case REDO:
+                            game_.redo();
+                            break;
                     }
                 } else {
                     Log.d(TAG, "deselecting");
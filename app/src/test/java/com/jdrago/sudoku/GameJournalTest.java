@@ -0,0 +1,205 @@
+package com.jdrago.sudoku;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class GameJournalTest {
+    private File file;
+    private SudokuGame game;
+    private int cell;
+
+    private static String state(SudokuGame game) {
+        StringBuilder sb = new StringBuilder();
+        for (int y = 0; y < game.size; ++y) {
+            for (int x = 0; x < game.size; ++x) {
+                SudokuGame.Cell c = game.grid[x][y];
+                sb.append(c.value).append(',').append(c.pencil).append(c.locked ? "L" : "").append(';');
+            }
+        }
+        sb.append(game.historyCount()).append('/').append(game.historyPosition());
+        return sb.toString();
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("journal", ".sdkj");
+        file.delete();
+        SudokuGenerator generator = new SudokuGenerator(SudokuGenerator.Engine.BITMASK, 1, 9);
+        game = new SudokuGame();
+        game.newGame(generator.generateSudoku(SudokuGenerator.Difficulty.EASY, 1));
+        cell = 0;
+        while (game.grid[cell % 9][cell / 9].value != 0) {
+            cell++;
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        file.delete();
+        new File(file.getPath() + ".tmp").delete();
+    }
+
+    private void play(int moves) {
+        for (int i = 0; i < moves; ++i) {
+            game.togglePencil(cell % 9, cell / 9, 1 + (i % 9));
+        }
+    }
+
+    private SudokuGame restored() throws Exception {
+        SudokuGame copy = new SudokuGame();
+        assertTrue(new GameJournal(file).restore(copy));
+        return copy;
+    }
+
+    /**
+     * Undoes both games step by step, checking they stay the same.
+     */
+    private static void assertSameUndo(SudokuGame expected, SudokuGame actual) {
+        while (expected.undo()) {
+            assertTrue(actual.undo());
+            assertEquals(state(expected), state(actual));
+        }
+        assertFalse(actual.undo());
+    }
+
+    @Test
+    public void missingJournalIsNotRestored() throws Exception {
+        assertFalse(new GameJournal(file).restore(new SudokuGame()));
+    }
+
+    @Test
+    public void restoresSnapshotAndMoves() throws Exception {
+        GameJournal journal = new GameJournal(file);
+        journal.attach(game);
+        play(20);
+        game.autoPencil();
+        game.setValue(cell % 9, cell / 9, 5);
+        assertTrue(game.undo());
+        journal.close();
+
+        SudokuGame copy = restored();
+        assertEquals(state(game), state(copy));
+        assertSameUndo(game, copy);
+    }
+
+    @Test
+    public void tornRecordIsDropped() throws Exception {
+        GameJournal journal = new GameJournal(file);
+        journal.attach(game);
+        play(10);
+        journal.flush();
+        long length = journal.length();
+        assertEquals(length, file.length());
+        journal.close();
+
+        // A record cut short by a kill part way through the write
+        FileOutputStream out = new FileOutputStream(file, true);
+        out.write(new byte[] { 1, 2, 3 });
+        out.close();
+
+        SudokuGame copy = new SudokuGame();
+        GameJournal reopened = new GameJournal(file);
+        assertTrue(reopened.restore(copy));
+        assertEquals(state(game), state(copy));
+
+        // New moves go after the last whole record, not after the torn one
+        reopened.attach(copy);
+        reopened.flush();
+        assertEquals(length, file.length());
+        copy.togglePencil(cell % 9, cell / 9, 9);
+        reopened.close();
+        assertEquals(length + 8, file.length());
+
+        SudokuGame again = restored();
+        assertEquals(state(copy), state(again));
+        assertSameUndo(copy, again);
+    }
+
+    @Test
+    public void restoresAfterCompaction() throws Exception {
+        GameJournal journal = new GameJournal(file);
+        journal.attach(game);
+        long longest = 0;
+        boolean compacted = false;
+        for (int i = 0; i < 3 * GameJournal.COMPACT_BYTES / 8; ++i) {
+            play(1);
+            long length = journal.length();
+            compacted |= length < longest;
+            longest = Math.max(longest, length);
+        }
+        assertTrue(compacted);
+        assertTrue(longest <= GameJournal.COMPACT_BYTES);
+        journal.flush();
+        assertEquals(journal.length(), file.length());
+        journal.close();
+        assertFalse(new File(file.getPath() + ".tmp").exists());
+
+        SudokuGame copy = restored();
+        assertEquals(state(game), state(copy));
+        assertSameUndo(game, copy);
+    }
+
+    @Test
+    public void saveBytesRoundTrip() throws Exception {
+        game.autoPencil();
+        game.setValue(cell % 9, cell / 9, 5);
+        byte bytes[] = new byte[3 + SudokuGame.SAVE_MAX_LENGTH];
+        int length = game.saveBytes(bytes, 3);
+        assertEquals(SudokuGame.saveLength(game.size), length);
+
+        SudokuGame copy = new SudokuGame();
+        assertTrue(copy.loadBytes(bytes, 3, length));
+        byte resaved[] = new byte[SudokuGame.SAVE_MAX_LENGTH];
+        assertEquals(length, copy.saveBytes(resaved, 0));
+        assertArrayEquals(Arrays.copyOfRange(bytes, 3, 3 + length), Arrays.copyOf(resaved, length));
+        for (int y = 0; y < game.size; ++y) {
+            for (int x = 0; x < game.size; ++x) {
+                assertEquals(game.grid[x][y].value, copy.grid[x][y].value);
+                assertEquals(game.grid[x][y].pencil, copy.grid[x][y].pencil);
+                assertEquals(game.grid[x][y].locked, copy.grid[x][y].locked);
+            }
+        }
+
+        assertFalse(copy.loadBytes(bytes, 3, length - 1));
+        bytes[3] = 0;
+        assertFalse(copy.loadBytes(bytes, 3, length));
+    }
+
+    @Test
+    public void saveStringRoundTrip() throws Exception {
+        game.autoPencil();
+        String saved = game.save();
+        SudokuGame copy = new SudokuGame();
+        copy.load(saved);
+        assertEquals(saved, copy.save());
+    }
+
+    @Test
+    public void snapshotSavesLikeTheGame() throws Exception {
+        game.autoPencil();
+        game.setValue(cell % 9, cell / 9, 5);
+        SudokuGame.Snapshot snapshot = game.snapshot();
+
+        byte expected[] = new byte[SudokuGame.SAVE_MAX_LENGTH];
+        byte actual[] = new byte[SudokuGame.SAVE_MAX_LENGTH];
+        assertEquals(game.saveBytes(expected, 0), snapshot.saveBytes(actual, 0));
+        assertArrayEquals(expected, actual);
+        assertEquals(game.historyCount(), snapshot.historyCount());
+        assertEquals(game.historyPosition(), snapshot.historyPosition());
+        for (int i = 0; i < game.historyCount(); ++i) {
+            assertEquals(game.historyMove(i), snapshot.historyMove(i));
+        }
+
+        // The snapshot keeps the board it was taken from
+        game.undo();
+        snapshot.saveBytes(actual, 0);
+        assertArrayEquals(expected, actual);
+    }
+}
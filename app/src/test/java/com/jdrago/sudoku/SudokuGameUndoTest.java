@@ -0,0 +1,170 @@
+package com.jdrago.sudoku;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.*;
+
+public class SudokuGameUndoTest {
+    private SudokuGame game;
+
+    private static String snapshot(SudokuGame game) {
+        StringBuilder sb = new StringBuilder();
+        for (int y = 0; y < game.size; ++y) {
+            for (int x = 0; x < game.size; ++x) {
+                SudokuGame.Cell cell = game.grid[x][y];
+                sb.append(cell.value).append(',').append(cell.pencil).append(',').append(game.candidates(x, y))
+                        .append(';');
+            }
+        }
+        return sb.toString();
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        SudokuGenerator generator = new SudokuGenerator(SudokuGenerator.Engine.BITMASK, 1, 9);
+        game = new SudokuGame();
+        game.newGame(generator.generateSudoku(SudokuGenerator.Difficulty.EASY, 1));
+    }
+
+    private int firstEmptyCell() {
+        for (int k = 0; k < game.size * game.size; ++k) {
+            if (game.grid[k % game.size][k / game.size].value == 0) {
+                return k;
+            }
+        }
+        fail("no empty cell");
+        return -1;
+    }
+
+    @Test
+    public void undoAndRedoRestoreEveryState() throws Exception {
+        ArrayList<String> states = new ArrayList<String>();
+        states.add(snapshot(game));
+        int cell = firstEmptyCell();
+        for (int v = 1; v <= 9; ++v) {
+            game.togglePencil(cell % 9, cell / 9, v);
+            states.add(snapshot(game));
+        }
+        game.autoPencil();
+        states.add(snapshot(game));
+        game.setValue(cell % 9, cell / 9, 5);
+        states.add(snapshot(game));
+
+        for (int i = states.size() - 2; i >= 0; --i) {
+            assertTrue(game.undo());
+            assertEquals(states.get(i), snapshot(game));
+        }
+        assertFalse(game.undo());
+        for (int i = 1; i < states.size(); ++i) {
+            assertTrue(game.redo());
+            assertEquals(states.get(i), snapshot(game));
+        }
+        assertFalse(game.redo());
+    }
+
+    @Test
+    public void newMoveDropsRedo() throws Exception {
+        int cell = firstEmptyCell();
+        game.togglePencil(cell % 9, cell / 9, 1);
+        game.togglePencil(cell % 9, cell / 9, 2);
+        assertTrue(game.undo());
+        assertTrue(game.canRedo());
+        game.togglePencil(cell % 9, cell / 9, 3);
+        assertFalse(game.canRedo());
+        assertTrue(game.undo());
+        assertEquals(1, game.grid[cell % 9][cell / 9].pencil);
+    }
+
+    @Test
+    public void ringWrapsAroundKeepingNewestMoves() throws Exception {
+        int cell = firstEmptyCell();
+        int moves = SudokuGame.HISTORY_CAPACITY * 2 + 123;
+        ArrayList<String> states = new ArrayList<String>();
+        states.add(snapshot(game));
+        for (int i = 0; i < moves; ++i) {
+            game.togglePencil(cell % 9, cell / 9, 1 + (i % 9));
+            states.add(snapshot(game));
+        }
+        assertEquals(SudokuGame.HISTORY_CAPACITY, game.historyCount());
+
+        int undone = 0;
+        while (game.undo()) {
+            undone++;
+            assertEquals(states.get(moves - undone), snapshot(game));
+        }
+        assertEquals(SudokuGame.HISTORY_CAPACITY, undone);
+        while (game.redo()) {
+            undone--;
+            assertEquals(states.get(moves - undone), snapshot(game));
+        }
+        assertEquals(0, undone);
+    }
+
+    @Test
+    public void ringEvictsWholeMoves() throws Exception {
+        // A move of many changes, then enough single changes to push part of it out of the ring
+        game.autoPencil();
+        int group = game.historyCount();
+        assertTrue(group > 1);
+        String afterGroup = snapshot(game);
+
+        int cell = firstEmptyCell();
+        int singles = SudokuGame.HISTORY_CAPACITY - group + 1;
+        for (int i = 0; i < singles; ++i) {
+            game.togglePencil(cell % 9, cell / 9, 1 + (i % 9));
+        }
+        assertEquals(singles, game.historyCount());
+
+        for (int i = 0; i < singles; ++i) {
+            assertTrue(game.undo());
+        }
+        assertFalse(game.undo());
+        assertEquals(afterGroup, snapshot(game));
+    }
+
+    @Test
+    public void clearingAValueAfterHintsUndoes() throws Exception {
+        // Play hints until one has ruled out candidates and one has placed a value
+        SudokuGenerator generator = new SudokuGenerator(SudokuGenerator.Engine.BITMASK, 1, 9);
+        game.newGame(generator.generateSudoku(SudokuGenerator.Difficulty.HARD, 1));
+        game.autoPencil();
+        boolean eliminated = false;
+        int placed = -1;
+        for (int i = 0; (i < 200) && (!eliminated || (placed < 0)); ++i) {
+            SudokuGame.Hint hint = game.hint();
+            assertNotNull(hint);
+            if (hint.value == 0) {
+                eliminated = true;
+            } else if (eliminated) {
+                placed = hint.y * 9 + hint.x;
+            }
+            game.applyHint(hint);
+        }
+        assertTrue(eliminated && (placed >= 0));
+
+        // Taking the value back gives back the candidates the hints ruled out
+        String before = snapshot(game);
+        game.setValue(placed % 9, placed / 9, 0);
+        String after = snapshot(game);
+        assertFalse(before.equals(after));
+        assertTrue(game.undo());
+        assertEquals(before, snapshot(game));
+        assertTrue(game.redo());
+        assertEquals(after, snapshot(game));
+        assertTrue(game.undo());
+        assertEquals(before, snapshot(game));
+    }
+
+    @Test
+    public void packedMovesKeepEveryField() throws Exception {
+        long move = SudokuGame.packMove(SudokuGame.MOVE_PENCIL, true, 624, 25, 17, 0x1ffffff);
+        assertEquals(624, move & 0x3ff);
+        assertEquals(25, (move >>> 10) & 0x1f);
+        assertEquals(17, (move >>> 15) & 0x1f);
+        assertEquals(0x1ffffff, (move >>> 20) & 0x1ffffff);
+        assertEquals(SudokuGame.MOVE_PENCIL, (move >>> 46) & 3);
+    }
+}
@@ -0,0 +1,130 @@
+package com.jdrago.sudoku;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Game state bookkeeping and persistence, on a half played MEDIUM game with pencil marks.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class GameBenchmark {
+
+    static final long SEED = 20171018L;
+
+    private SudokuGame game;
+    private String saved;
+    private String savedJson;
+    private String savedOld;
+
+    @Setup(Level.Trial)
+    public void setUp() throws JSONException {
+        SudokuGenerator generator = new SudokuGenerator();
+        SudokuGenerator.Board puzzle = generator.generateSudoku(SudokuGenerator.Difficulty.MEDIUM, SEED);
+        SudokuGenerator.Board solution = new SudokuGenerator.Board(puzzle);
+        new BitmaskSolver().solve(solution, null);
+
+        game = new SudokuGame();
+        game.newGame(puzzle);
+        for (int k = 0; k < 81; ++k) {
+            int x = k % 9;
+            int y = k / 9;
+            if (game.grid[x][y].locked) {
+                continue;
+            }
+            if ((k % 2) == 0) {
+                game.setValue(x, y, solution.getNumber(x, y));
+            } else {
+                game.togglePencil(x, y, solution.getNumber(x, y));
+                game.togglePencil(x, y, 1 + (k % 9));
+            }
+        }
+
+        saved = game.save();
+        savedJson = legacyJson(game);
+        savedOld = legacyOld(game);
+    }
+
+    @Benchmark
+    public boolean updateCells() {
+        game.updateCells();
+        return game.solved;
+    }
+
+    @Benchmark
+    public String save() {
+        return game.save();
+    }
+
+    @Benchmark
+    public SudokuGame load() {
+        game.load(saved);
+        return game;
+    }
+
+    @Benchmark
+    public SudokuGame loadJson() {
+        game.load(savedJson);
+        return game;
+    }
+
+    @Benchmark
+    public SudokuGame loadOld() {
+        game.loadOld(savedOld);
+        return game;
+    }
+
+    /**
+     * The JSON format save() wrote before the binary one.
+     */
+    static String legacyJson(SudokuGame game) throws JSONException {
+        JSONArray cells = new JSONArray();
+        for (int j = 0; j < 9; ++j) {
+            for (int i = 0; i < 9; ++i) {
+                SudokuGame.Cell cell = game.grid[i][j];
+                JSONObject jcell = new JSONObject();
+                if (cell.locked)
+                    jcell.put("l", 1);
+                jcell.put("v", cell.value);
+                if (cell.pencil != 0) {
+                    JSONArray jpencil = new JSONArray();
+                    for (int p = 0; p < 9; ++p)
+                        jpencil.put(((cell.pencil & (1 << p)) != 0) ? 1 : 0);
+                    jcell.put("p", jpencil);
+                }
+                cells.put(jcell);
+            }
+        }
+        JSONObject o = new JSONObject();
+        o.put("cells", cells);
+        return o.toString();
+    }
+
+    /**
+     * The original string format read by loadOld(): every cell's value, prefixed with L when locked.
+     */
+    static String legacyOld(SudokuGame game) {
+        StringBuilder sb = new StringBuilder();
+        for (int j = 0; j < 9; ++j) {
+            for (int i = 0; i < 9; ++i) {
+                SudokuGame.Cell cell = game.grid[i][j];
+                if (cell.locked)
+                    sb.append('L');
+                sb.append(cell.value);
+            }
+        }
+        return sb.toString();
+    }
+}
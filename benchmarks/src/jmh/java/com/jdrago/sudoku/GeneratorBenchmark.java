@@ -0,0 +1,45 @@
+package com.jdrago.sudoku;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Whole puzzle generation, single threaded, for every difficulty and engine.
+ * Seeds run in a fixed sequence from SEED, so every run generates the same puzzles.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class GeneratorBenchmark {
+
+    static final long SEED = 20171018L;
+
+    @Param({"EASY", "MEDIUM", "HARD", "EXTREME"})
+    public SudokuGenerator.Difficulty difficulty;
+
+    @Param({"BITMASK", "DLX"})
+    public SudokuGenerator.Engine engine;
+
+    private SudokuGenerator generator;
+    private long seed;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        generator = new SudokuGenerator(engine);
+        seed = SEED;
+    }
+
+    @Benchmark
+    public SudokuGenerator.Board generateSudoku() {
+        return generator.generateSudoku(difficulty, seed++);
+    }
+}
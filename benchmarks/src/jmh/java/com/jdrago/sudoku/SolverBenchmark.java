@@ -0,0 +1,83 @@
+package com.jdrago.sudoku;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Solving and uniqueness checking, for every engine.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class SolverBenchmark {
+
+    // Minimal and near-minimal puzzles, the slowest kind for a backtracking search.
+    static final String SPARSE[] = {
+            "000000010400000000020000000000050407008000300001090000300400200050100000000806000",
+            "000000012000035000000600070700000300000400800100000000000120000080000040050000600",
+            "000000012003600000000007000410020000000500300700000600280000040000300500000000000",
+            "000000012000000003002300400001800005060070800000009000008500000900040500470006000",
+            "800000000003600000070090200050007000000045700000100030001000068008500010090000400",
+    };
+
+    static final String EMPTY = new String(new char[PuzzleCodec.DIGITS_LENGTH]).replace('\0', '0');
+
+    static final long SEED = 20171018L;
+
+    @Param({"BITMASK", "DLX"})
+    public SudokuGenerator.Engine engine;
+
+    private SolverEngine solver;
+    private SudokuGenerator generator;
+    private Random random;
+    private SudokuGenerator.Board board;
+    private SudokuGenerator.Board generated[];
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        solver = engine.create();
+        generator = new SudokuGenerator(engine);
+        random = new Random(SEED);
+        board = new SudokuGenerator.Board();
+
+        generated = new SudokuGenerator.Board[16];
+        for (int i = 0; i < generated.length; ++i) {
+            generated[i] = generator.generateSudoku(SudokuGenerator.Difficulty.HARD, SEED + i);
+        }
+        next = 0;
+    }
+
+    @Benchmark
+    public boolean solveEmpty() {
+        PuzzleCodec.fromDigits(EMPTY, 0, board);
+        return solver.solve(board, random);
+    }
+
+    @Benchmark
+    public boolean solveSparse() {
+        PuzzleCodec.fromDigits(SPARSE[next++ % SPARSE.length], 0, board);
+        return solver.solve(board, null);
+    }
+
+    @Benchmark
+    public boolean verifyUnicity() {
+        return generator.verifyUnicity(generated[next++ % generated.length]);
+    }
+
+    @Benchmark
+    public int countSolutionsSparse() {
+        PuzzleCodec.fromDigits(SPARSE[next++ % SPARSE.length], 0, board);
+        return solver.countSolutions(board, 2);
+    }
+}
@@ -0,0 +1,93 @@
+package com.jdrago.sudoku;
+
+/**
+ * Minimal standard Base64 (RFC 4648, with padding) over caller-supplied buffers.
+ * android.util.Base64 would tie the game state code to Android, and java.util.Base64 needs API 26.
+ */
+final class Base64Codec {
+
+    private static final char ALPHABET[] = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+    private static final int DECODE[] = new int[128];
+
+    static {
+        for (int i = 0; i < DECODE.length; ++i) {
+            DECODE[i] = -1;
+        }
+        for (int i = 0; i < ALPHABET.length; ++i) {
+            DECODE[ALPHABET[i]] = i;
+        }
+    }
+
+    private Base64Codec() {
+    }
+
+    static int encodedLength(int length) {
+        return ((length + 2) / 3) * 4;
+    }
+
+    /**
+     * @return The number of chars written, always encodedLength(length).
+     */
+    static int encode(byte in[], int offset, int length, char out[], int outOffset) {
+        int o = outOffset;
+        int end = offset + length;
+        for (int i = offset; i < end; i += 3) {
+            int remaining = end - i;
+            int b = (in[i] & 0xff) << 16;
+            if (remaining > 1) {
+                b |= (in[i + 1] & 0xff) << 8;
+            }
+            if (remaining > 2) {
+                b |= in[i + 2] & 0xff;
+            }
+            out[o++] = ALPHABET[(b >> 18) & 0x3f];
+            out[o++] = ALPHABET[(b >> 12) & 0x3f];
+            out[o++] = (remaining > 1) ? ALPHABET[(b >> 6) & 0x3f] : '=';
+            out[o++] = (remaining > 2) ? ALPHABET[b & 0x3f] : '=';
+        }
+        return o - outOffset;
+    }
+
+    /**
+     * @return The number of bytes written, or -1 if the text is not valid Base64 or out is too small.
+     */
+    static int decode(CharSequence in, int offset, int length, byte out[], int outOffset) {
+        if ((length % 4) != 0) {
+            return -1;
+        }
+        int o = outOffset;
+        int end = offset + length;
+        for (int i = offset; i < end; i += 4) {
+            int b = 0;
+            int chars = 0;
+            for (int k = 0; k < 4; ++k) {
+                char c = in.charAt(i + k);
+                if (c == '=') {
+                    if ((i + 4 != end) || (k < 2)) {
+                        return -1;
+                    }
+                    b <<= 6;
+                    continue;
+                }
+                int d = (c < DECODE.length) ? DECODE[c] : -1;
+                if ((d < 0) || (chars < k)) {
+                    return -1;
+                }
+                b = (b << 6) | d;
+                ++chars;
+            }
+            int bytes = chars - 1;
+            if (o + bytes > out.length) {
+                return -1;
+            }
+            out[o++] = (byte) (b >> 16);
+            if (bytes > 1) {
+                out[o++] = (byte) (b >> 8);
+            }
+            if (bytes > 2) {
+                out[o++] = (byte) b;
+            }
+        }
+        return o - outOffset;
+    }
+}
@@ -0,0 +1,264 @@
+package com.jdrago.sudoku;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Generates puzzles in bulk from the command line, one generator per core, and streams them to a file.
+ *
+ * Usage: BatchGenerator [options] output
+ *   -n count         Puzzles per difficulty (default 1000).
+ *   -d EASY,HARD     Difficulties to generate (default EASY,MEDIUM,HARD).
+ *   -t threads       Generator threads (default all cores).
+ *   -f lines|bank    Output format (default lines). Lines are "DIFFICULTY digits" as read by PuzzlePool and
+ *                    SeedPuzzleSource; a bank is a PuzzleBank file.
+ *   -u               Skip puzzles that are symmetric copies of one already written.
+ *
+ * Difficulties are generated one after the other, so every difficulty ends up in one contiguous block.
+ * Progress and puzzles per second go to stderr as it runs.
+ */
+public class BatchGenerator {
+
+    private static final long REPORT_INTERVAL_MS = 1000;
+
+    // Puzzles waiting for the writer, per thread. Workers block once the queue is full, so a slow disk can't pile
+    // them up in memory and little is generated past the count.
+    private static final int QUEUE_PER_THREAD = 4;
+
+    private int count = 1000;
+    private final ArrayList<SudokuGenerator.Difficulty> difficulties = new ArrayList<SudokuGenerator.Difficulty>();
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private boolean bank = false;
+    private boolean unique = false;
+    private File output;
+
+    private final GenerationMetrics metrics = new GenerationMetrics();
+
+    public static void main (String [] args) {
+        BatchGenerator batch = new BatchGenerator();
+        try {
+            batch.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("usage: BatchGenerator [-n count] [-d EASY,MEDIUM,...] [-t threads] [-f lines|bank] [-u] output");
+            System.exit(2);
+        }
+
+        try {
+            batch.run();
+        } catch (IOException e) {
+            System.err.println("could not write " + batch.output + ": " + e.getMessage());
+            System.exit(1);
+        } catch (ExecutionException e) {
+            System.err.println();
+            System.err.println("generation failed: " + e.getCause());
+            e.getCause().printStackTrace();
+            System.exit(1);
+        } catch (InterruptedException e) {
+            System.exit(1);
+        }
+    }
+
+    private void parse (String [] args) {
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (!arg.startsWith("-")) {
+                if (output != null) {
+                    throw new IllegalArgumentException("more than one output: " + arg);
+                }
+                output = new File(arg);
+                continue;
+            }
+            if (arg.equals("-u")) {
+                unique = true;
+                continue;
+            }
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("missing value for " + arg);
+            }
+            String value = args[++i];
+            if (arg.equals("-n")) {
+                count = parsePositive(arg, value);
+            } else if (arg.equals("-t")) {
+                threads = parsePositive(arg, value);
+            } else if (arg.equals("-d")) {
+                for (String name : value.split(",")) {
+                    difficulties.add(SudokuGenerator.Difficulty.valueOf(name.trim().toUpperCase(Locale.US)));
+                }
+            } else if (arg.equals("-f")) {
+                if (!value.equals("lines") && !value.equals("bank")) {
+                    throw new IllegalArgumentException("unknown format " + value);
+                }
+                bank = value.equals("bank");
+            } else {
+                throw new IllegalArgumentException("unknown option " + arg);
+            }
+        }
+        if (output == null) {
+            throw new IllegalArgumentException("no output file");
+        }
+        if (difficulties.isEmpty()) {
+            difficulties.add(SudokuGenerator.Difficulty.EASY);
+            difficulties.add(SudokuGenerator.Difficulty.MEDIUM);
+            difficulties.add(SudokuGenerator.Difficulty.HARD);
+        }
+    }
+
+    private static int parsePositive (String option, String value) {
+        try {
+            int n = Integer.parseInt(value);
+            if (n > 0) {
+                return n;
+            }
+        } catch (NumberFormatException e) {
+        }
+        throw new IllegalArgumentException(option + " needs a positive number, not " + value);
+    }
+
+    private void run () throws IOException, InterruptedException, ExecutionException {
+        FingerprintFilter filter = unique ? FingerprintFilter.forCount((long) count * difficulties.size(), 0.0001) : null;
+        Writer lines = null;
+        PuzzleBank.Writer bankWriter = null;
+        if (bank) {
+            bankWriter = new PuzzleBank.Writer(output);
+            bankWriter.setFilter(filter);
+        } else {
+            lines = new BufferedWriter(new FileWriter(output));
+        }
+
+        final long start = System.nanoTime();
+        try {
+            for (SudokuGenerator.Difficulty difficulty : difficulties) {
+                if (bankWriter != null) {
+                    bankWriter.startSection(difficulty);
+                }
+                generate(difficulty, lines, bankWriter, filter);
+            }
+        } finally {
+            if (bankWriter != null) {
+                bankWriter.close();
+            }
+            if (lines != null) {
+                lines.close();
+            }
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long total = (long) count * difficulties.size();
+        System.err.println(String.format(Locale.US, "%d puzzles in %.1f s, %.1f puzzles/s on %d threads",
+                total, seconds, total / seconds, threads));
+        System.err.print(metrics);
+    }
+
+    /**
+     * Runs every thread on the given difficulty and writes what they make until count puzzles are written.
+     * @throws ExecutionException If a generator thread failed, with its exception as the cause.
+     */
+    private void generate (final SudokuGenerator.Difficulty difficulty, Writer lines, PuzzleBank.Writer bankWriter,
+                           FingerprintFilter filter) throws IOException, InterruptedException, ExecutionException {
+        final BlockingQueue<SudokuGenerator.Board> queue = new ArrayBlockingQueue<SudokuGenerator.Board>(threads * QUEUE_PER_THREAD);
+        final AtomicBoolean done = new AtomicBoolean(false);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        ArrayList<Future<Void>> workers = new ArrayList<Future<Void>>();
+        for (int i = 0; i < threads; i++) {
+            workers.add(pool.submit(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    // Every thread gets its own single threaded generator: whole puzzles in parallel scale
+                    // better than the attempts of one puzzle in parallel.
+                    SudokuGenerator generator = new SudokuGenerator();
+                    generator.setGenerationListener(metrics);
+                    try {
+                        while (!done.get()) {
+                            SudokuGenerator.Board board = generator.generateSudoku(difficulty);
+                            if (board == null) {
+                                break;
+                            }
+                            queue.put(board);
+                        }
+                    } catch (InterruptedException e) {
+                        // Told to stop
+                    }
+                    return null;
+                }
+            }));
+        }
+
+        final long start = System.nanoTime();
+        long lastReport = 0;
+        int written = 0;
+        int duplicates = 0;
+        try {
+            while (written < count) {
+                SudokuGenerator.Board board = queue.poll(REPORT_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                if (board != null) {
+                    boolean added;
+                    if (bankWriter != null) {
+                        added = bankWriter.add(board);
+                    } else {
+                        added = (filter == null) || filter.add(CanonicalForm.fingerprint(board));
+                        if (added) {
+                            lines.write(difficulty.name());
+                            lines.write(' ');
+                            lines.write(PuzzleCodec.toDigits(board));
+                            lines.write('\n');
+                        }
+                    }
+                    if (added) {
+                        written++;
+                    } else {
+                        duplicates++;
+                    }
+                }
+                checkWorkers(workers, queue.isEmpty());
+
+                long now = System.nanoTime();
+                if ((now - lastReport) / 1000000 >= REPORT_INTERVAL_MS || written == count) {
+                    lastReport = now;
+                    double seconds = (now - start) / 1e9;
+                    System.err.print(String.format(Locale.US, "\r%s %d/%d, %.1f puzzles/s, %d duplicates skipped",
+                            difficulty.name(), written, count, written / seconds, duplicates));
+                }
+            }
+            System.err.println();
+        } finally {
+            done.set(true);
+            pool.shutdownNow();
+            pool.awaitTermination(1, TimeUnit.MINUTES);
+        }
+    }
+
+    /**
+     * Rethrows the failure of any generator thread that has died, so the writer does not wait on it forever.
+     * @param drained Whether the queue is empty, so that nothing more can come once every thread has stopped.
+     * @throws ExecutionException If a thread failed, or every thread stopped with puzzles still to make.
+     */
+    private static void checkWorkers (ArrayList<Future<Void>> workers, boolean drained)
+            throws InterruptedException, ExecutionException {
+        int running = 0;
+        for (Future<Void> worker : workers) {
+            if (worker.isDone()) {
+                worker.get();
+            } else {
+                running++;
+            }
+        }
+        if ((running == 0) && drained) {
+            throw new ExecutionException(new IllegalStateException("every generator stopped early"));
+        }
+    }
+}
@@ -0,0 +1,377 @@
+package com.jdrago.sudoku;
+
+import java.util.Random;
+
+/**
+ * Backtracking solver that keeps row, column and box occupancy as bitmasks.
+ * Naked and hidden singles are propagated before every branch, and branching
+ * always happens on the empty cell with the fewest candidates.
+ */
+public class BitmaskSolver implements SolverEngine {
+
+    // Only set while a solve is running.
+    private Random random;
+
+    private final int size;
+    private final int cellCount;
+    private final int allMask;
+
+    private final int [] cellRow;
+    private final int [] cellCol;
+    private final int [] cellBox;
+    private final int [][] units;
+
+    // Every value is stored as a single bit (1 << (number - 1)), 0 means empty.
+    private final int [] values;
+    private final int [] rowMask;
+    private final int [] colMask;
+    private final int [] boxMask;
+
+    // Cells placed so far, in order, so a failed branch can be rolled back.
+    private final int [] trail;
+    private int trailSize = 0;
+
+    // Per-depth scratch space for the digits tried at a branch.
+    private final int [][] order;
+
+    private int solutions = 0;
+    private int solutionLimit = 0;
+
+    private long nodeLimit = 0;
+    private long nodesLeft = 0;
+    private boolean gaveUp = false;
+
+    private long nodes = 0;
+    private long backtracks = 0;
+
+    public BitmaskSolver() {
+        this(SudokuGenerator.Board.SIZE);
+    }
+
+    /**
+     * @param size The size of the boards this solver will be given, up to SudokuGenerator.Board.MAX_SIZE.
+     */
+    public BitmaskSolver(int size) {
+        if (!SudokuGenerator.Board.isValidSize(size)) {
+            throw new IllegalArgumentException("Unsupported board size " + size);
+        }
+        this.size = size;
+        cellCount = size * size;
+        allMask = (1 << size) - 1;
+
+        final int boxSize = (int)Math.sqrt(size);
+        cellRow = new int [cellCount];
+        cellCol = new int [cellCount];
+        cellBox = new int [cellCount];
+        units = new int [size * 3][size];
+        int [] boxFill = new int [size];
+        for (int i = 0; i < cellCount; i++) {
+            int y = i / size;
+            int x = i % size;
+            int box = (y / boxSize) * boxSize + (x / boxSize);
+            cellRow[i] = y;
+            cellCol[i] = x;
+            cellBox[i] = box;
+            units[y][x] = i;
+            units[size + x][y] = i;
+            units[size * 2 + box][boxFill[box]++] = i;
+        }
+
+        values = new int [cellCount];
+        rowMask = new int [size];
+        colMask = new int [size];
+        boxMask = new int [size];
+        trail = new int [cellCount];
+        order = new int [cellCount + 1][size];
+    }
+
+    @Override
+    public boolean solve (SudokuGenerator.Board b, Random random) {
+        this.random = random;
+        boolean solved = loadBoard(b) && search(0);
+        this.random = null;
+        if (!solved || gaveUp) {
+            return false;
+        }
+
+        for (int i = 0; i < cellCount; i++) {
+            b.setNumber(cellCol[i], cellRow[i], Integer.numberOfTrailingZeros(values[i]) + 1);
+        }
+        return true;
+    }
+
+    @Override
+    public int countSolutions (SudokuGenerator.Board b, int limit) {
+        solutions = 0;
+        solutionLimit = limit;
+        if (limit > 0 && loadBoard(b)) {
+            count(0);
+        }
+        return gaveUp ? limit : solutions;
+    }
+
+    @Override
+    public boolean isUnique (SudokuGenerator.Board b) {
+        return countSolutions(b, 2) == 1;
+    }
+
+    @Override
+    public void setNodeLimit (long nodes) {
+        nodeLimit = nodes;
+    }
+
+    @Override
+    public long getNodeCount () {
+        return nodes;
+    }
+
+    @Override
+    public long getBacktrackCount () {
+        return backtracks;
+    }
+
+    /**
+     * Counts a search node against the limit.
+     * @return false once the limit has been used up.
+     */
+    private boolean visit () {
+        nodes++;
+        if (nodeLimit > 0 && --nodesLeft < 0) {
+            gaveUp = true;
+        }
+        return !gaveUp;
+    }
+
+    /**
+     * Copies the board into the masks.
+     * @return false if two givens already conflict.
+     */
+    private boolean loadBoard (SudokuGenerator.Board board) {
+        if (board.getSize() != size) {
+            throw new IllegalArgumentException("Solver for size " + size + " given a board of size " + board.getSize());
+        }
+        trailSize = 0;
+        nodesLeft = nodeLimit;
+        gaveUp = false;
+        for (int i = 0; i < size; i++) {
+            rowMask[i] = 0;
+            colMask[i] = 0;
+            boxMask[i] = 0;
+        }
+        for (int i = 0; i < cellCount; i++) {
+            values[i] = 0;
+        }
+
+        for (int i = 0; i < cellCount; i++) {
+            int num = board.getNumber(cellCol[i], cellRow[i]);
+            if (num == 0) {
+                continue;
+            }
+            int bit = 1 << (num - 1);
+            if ((candidates(i) & bit) == 0) {
+                return false;
+            }
+            place(i, bit);
+        }
+        return true;
+    }
+
+    private int candidates (int cell) {
+        return allMask & ~(rowMask[cellRow[cell]] | colMask[cellCol[cell]] | boxMask[cellBox[cell]]);
+    }
+
+    private int unitMask (int unit) {
+        if (unit < size) {
+            return rowMask[unit];
+        } else if (unit < size * 2) {
+            return colMask[unit - size];
+        }
+        return boxMask[unit - size * 2];
+    }
+
+    private void place (int cell, int bit) {
+        values[cell] = bit;
+        rowMask[cellRow[cell]] |= bit;
+        colMask[cellCol[cell]] |= bit;
+        boxMask[cellBox[cell]] |= bit;
+        trail[trailSize++] = cell;
+    }
+
+    private void undo (int mark) {
+        while (trailSize > mark) {
+            int cell = trail[--trailSize];
+            int bit = ~values[cell];
+            rowMask[cellRow[cell]] &= bit;
+            colMask[cellCol[cell]] &= bit;
+            boxMask[cellBox[cell]] &= bit;
+            values[cell] = 0;
+        }
+    }
+
+    /**
+     * Places naked and hidden singles until nothing changes.
+     * @return false if a contradiction was found.
+     */
+    private boolean propagate () {
+        boolean progress = true;
+        while (progress) {
+            progress = false;
+
+            // Naked singles: cells with exactly one candidate left.
+            for (int i = 0; i < cellCount; i++) {
+                if (values[i] != 0) {
+                    continue;
+                }
+                int cands = candidates(i);
+                if (cands == 0) {
+                    return false;
+                }
+                if ((cands & (cands - 1)) == 0) {
+                    place(i, cands);
+                    progress = true;
+                }
+            }
+
+            // Hidden singles: digits with exactly one possible cell in a unit.
+            for (int u = 0; u < units.length; u++) {
+                int [] unit = units[u];
+                int once = 0;
+                int twice = 0;
+                for (int k = 0; k < size; k++) {
+                    int cell = unit[k];
+                    if (values[cell] == 0) {
+                        int cands = candidates(cell);
+                        twice |= once & cands;
+                        once |= cands;
+                    }
+                }
+                if ((once | unitMask(u)) != allMask) {
+                    return false; // Some digit has nowhere to go in this unit
+                }
+
+                int singles = once & ~twice;
+                while (singles != 0) {
+                    int bit = singles & -singles;
+                    singles &= singles - 1;
+                    for (int k = 0; k < size; k++) {
+                        int cell = unit[k];
+                        if ((values[cell] == 0) && ((candidates(cell) & bit) != 0)) {
+                            place(cell, bit);
+                            progress = true;
+                            break;
+                        }
+                    }
+                    if ((unitMask(u) & bit) == 0) {
+                        return false; // Its only cell was taken by another single
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    private boolean search (int depth) {
+        final int mark = trailSize;
+        if (!visit()) {
+            undo(mark);
+            return false;
+        }
+        if (!propagate()) {
+            backtracks++;
+            undo(mark);
+            return false;
+        }
+
+        final int best = mostConstrainedCell();
+        if (best < 0) {
+            return true;
+        }
+
+        final int [] digits = order[depth];
+        final int count = branchDigits(best, digits);
+        for (int i = 0; i < count; i++) {
+            place(best, digits[i]);
+            if (search(depth + 1)) {
+                return true;
+            }
+            undo(trailSize - 1);
+        }
+
+        undo(mark);
+        return false;
+    }
+
+    private void count (int depth) {
+        final int mark = trailSize;
+        if (!visit()) {
+            undo(mark);
+            return;
+        }
+        if (!propagate()) {
+            backtracks++;
+            undo(mark);
+            return;
+        }
+
+        final int best = mostConstrainedCell();
+        if (best < 0) {
+            solutions++;
+            undo(mark);
+            return;
+        }
+
+        final int [] digits = order[depth];
+        final int count = branchDigits(best, digits);
+        for (int i = 0; i < count && solutions < solutionLimit && !gaveUp; i++) {
+            place(best, digits[i]);
+            count(depth + 1);
+            undo(trailSize - 1);
+        }
+
+        undo(mark);
+    }
+
+    /**
+     * @return The empty cell with the fewest candidates, or -1 if the board is full.
+     */
+    private int mostConstrainedCell () {
+        int best = -1;
+        int bestCount = size + 1;
+        for (int i = 0; i < cellCount; i++) {
+            if (values[i] != 0) {
+                continue;
+            }
+            int count = Integer.bitCount(candidates(i));
+            if (count < bestCount) {
+                best = i;
+                bestCount = count;
+                if (count == 2) {
+                    break;
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Fills digits with the candidate bits of a cell, shuffled if we have a random source.
+     * @return The number of digits written.
+     */
+    private int branchDigits (int cell, int [] digits) {
+        int count = 0;
+        int cands = candidates(cell);
+        while (cands != 0) {
+            digits[count++] = cands & -cands;
+            cands &= cands - 1;
+        }
+        if (random != null) {
+            for (int i = count - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                int tmp = digits[i];
+                digits[i] = digits[j];
+                digits[j] = tmp;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,347 @@
+package com.jdrago.sudoku;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+
+/**
+ * Maps a puzzle to the one representative of everything Board.transform() can turn it into, so that puzzles
+ * that are the same up to symmetry can be recognised.
+ *
+ * The representative is the transform whose cells, read row by row with the numbers relabelled in order of
+ * first appearance, are lexicographically smallest (empty cells first). It is found one row at a time: only the
+ * partial transforms tied for the smallest rows so far are carried on to the next row, which keeps the search
+ * to a few thousand steps instead of the full trillion transforms.
+ *
+ * Symmetric boards, like a nearly empty one or a puzzle with automorphisms, tie along a huge number of partial
+ * transforms. Ties that would read the rest of the board the same way can only end the same, so just one of them
+ * is kept. Should a tie set still pass MAX_TIED, only the first MAX_TIED are kept: the result is then still the
+ * same for the same board, but some transforms of such a board may get a different form.
+ *
+ * Boards up to 9x9 are supported. Bigger boards have far too many column orders to enumerate this way.
+ */
+public class CanonicalForm {
+
+    // Every column order for each box size this class supports, indexed by box size.
+    private static final int [][][] COLUMN_ORDERS = new int [4][][];
+
+    // Ties carried from one row to the next at most, which bounds the time and memory one board can take.
+    static final int MAX_TIED = 1 << 14;
+
+    // Tie sets smaller than this are carried on as they are. Ordinary puzzles stay below it, and merging their
+    // ties would cost more than it saves.
+    private static final int MERGE_TIED = 4096;
+
+    static {
+        for (int boxSize = 2; boxSize < COLUMN_ORDERS.length; boxSize++) {
+            COLUMN_ORDERS[boxSize] = columnOrders(boxSize);
+        }
+    }
+
+    // One partial transform: the column order and the rows picked so far, with the labels they gave out.
+    private static class State {
+        final int [] cells;
+        final int [] cols;
+        final int [] rows;
+        final int [] labels;
+        int nextLabel;
+        int usedBands;
+
+        State (int [] cells, int [] cols, int size) {
+            this.cells = cells;
+            this.cols = cols;
+            rows = new int [size];
+            labels = new int [size + 1];
+            nextLabel = 1;
+        }
+
+        State (State parent) {
+            cells = parent.cells;
+            cols = parent.cols;
+            rows = parent.rows.clone();
+            labels = parent.labels.clone();
+            nextLabel = parent.nextLabel;
+            usedBands = parent.usedBands;
+        }
+    }
+
+    private CanonicalForm () {
+    }
+
+    public static boolean isSupported (int size) {
+        return SudokuGenerator.Board.isValidSize(size) && (size <= SudokuGenerator.Board.SIZE);
+    }
+
+    /**
+     * @return A new board holding the canonical form of the given one. Its filled cells are all const.
+     */
+    public static SudokuGenerator.Board canonicalize (SudokuGenerator.Board board) {
+        final int size = board.getSize();
+        final int [] cells = canonicalCells(board);
+        SudokuGenerator.Board canonical = new SudokuGenerator.Board(size);
+        for (int i = 0; i < cells.length; i++) {
+            if (cells[i] != 0) {
+                canonical.setNumber(i % size, i / size, cells[i]);
+                canonical.setConst(i % size, i / size, true);
+            }
+        }
+        return canonical;
+    }
+
+    /**
+     * @return A 64 bit hash of the canonical form, so every transform of a puzzle has the same fingerprint.
+     */
+    public static long fingerprint (SudokuGenerator.Board board) {
+        final int [] cells = canonicalCells(board);
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < cells.length; i++) {
+            h = (h ^ cells[i]) * 0x100000001b3L;
+        }
+        // FNV-1a alone mixes the last cells poorly, finish with a full avalanche.
+        h = (h ^ (h >>> 30)) * 0xbf58476d1ce4e5b9L;
+        h = (h ^ (h >>> 27)) * 0x94d049bb133111ebL;
+        return h ^ (h >>> 31);
+    }
+
+    /**
+     * @return The cells of the canonical form, row by row.
+     */
+    static int [] canonicalCells (SudokuGenerator.Board board) {
+        final int size = board.getSize();
+        if (!isSupported(size)) {
+            throw new IllegalArgumentException("Cannot canonicalize a board of size " + size);
+        }
+        final int boxSize = board.getBoxSize();
+
+        // The board as it is and transposed, so a transform only ever has to pick rows and columns.
+        final int [] plain = new int [size * size];
+        final int [] transposed = new int [size * size];
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                int number = board.getNumber(x, y);
+                plain[y * size + x] = number;
+                transposed[x * size + y] = number;
+            }
+        }
+
+        final int [] result = new int [size * size];
+        final int [] best = new int [size];
+        final int [] row = new int [size];
+        ArrayList<State> tied = new ArrayList<State>();
+        ArrayList<State> next = new ArrayList<State>();
+        HashSet<Future> futures = new HashSet<Future>();
+
+        // First row: every column order of every row of the board and of its transpose.
+        resetBest(best);
+        for (int [] cells : new int [][] { plain, transposed }) {
+            for (int [] cols : COLUMN_ORDERS[boxSize]) {
+                State probe = new State(cells, cols, size);
+                for (int r = 0; r < size; r++) {
+                    int cmp = compareRow(probe, r, size, best, row);
+                    if (cmp <= 0) {
+                        if (cmp < 0) {
+                            System.arraycopy(row, 0, best, 0, size);
+                            tied.clear();
+                        }
+                        tied.add(pick(new State(probe), r, 0, boxSize));
+                    }
+                    resetLabels(probe);
+                }
+            }
+        }
+        System.arraycopy(best, 0, result, 0, size);
+        merge(tied, 1, size, boxSize, futures);
+
+        // Every later row: the rest of the current band, or the first row of a band not used yet.
+        for (int k = 1; k < size; k++) {
+            resetBest(best);
+            next.clear();
+            for (State state : tied) {
+                for (int r = 0; r < size; r++) {
+                    if (!canFollow(state, r, k, boxSize)) {
+                        continue;
+                    }
+                    State probe = new State(state);
+                    int cmp = compareRow(probe, r, size, best, row);
+                    if (cmp <= 0) {
+                        if (cmp < 0) {
+                            System.arraycopy(row, 0, best, 0, size);
+                            next.clear();
+                        }
+                        next.add(pick(probe, r, k, boxSize));
+                    }
+                }
+            }
+            System.arraycopy(best, 0, result, k * size, size);
+            merge(next, k + 1, size, boxSize, futures);
+            ArrayList<State> swap = tied;
+            tied = next;
+            next = swap;
+        }
+        return result;
+    }
+
+    /**
+     * Everything a partial transform's remaining rows depend on: the rows it may still pick and how it reads
+     * each of them. Two states with the same future pick the same rows from here on.
+     */
+    private static class Future {
+        final int [] key;
+        final int hash;
+
+        Future (int [] key) {
+            this.key = key;
+            hash = Arrays.hashCode(key);
+        }
+
+        @Override
+        public int hashCode () {
+            return hash;
+        }
+
+        @Override
+        public boolean equals (Object other) {
+            return (other instanceof Future) && Arrays.equals(key, ((Future) other).key);
+        }
+    }
+
+    /**
+     * Drops every state whose future an earlier state in the list already has, then cuts the list to MAX_TIED.
+     * @param picked How many rows the states have picked.
+     */
+    private static void merge (ArrayList<State> states, int picked, int size, int boxSize, HashSet<Future> futures) {
+        if (states.size() >= MERGE_TIED) {
+            futures.clear();
+            int kept = 0;
+            for (int i = 0; i < states.size(); i++) {
+                State state = states.get(i);
+                if (futures.add(future(state, picked, size, boxSize))) {
+                    states.set(kept++, state);
+                }
+            }
+            states.subList(kept, states.size()).clear();
+            futures.clear();
+        }
+        if (states.size() > MAX_TIED) {
+            states.subList(MAX_TIED, states.size()).clear();
+        }
+    }
+
+    private static Future future (State state, int picked, int size, int boxSize) {
+        final int [] key = new int [2 + size * size];
+        key[0] = state.usedBands;
+        // The band the next row has to come from, or -1 for any unused one
+        key[1] = (picked % boxSize == 0) ? -1 : state.rows[picked - 1] / boxSize;
+        int usedRows = 0;
+        for (int i = 0; i < picked; i++) {
+            usedRows |= 1 << state.rows[i];
+        }
+        for (int r = 0; r < size; r++) {
+            for (int i = 0; i < size; i++) {
+                int value = -1;
+                if ((usedRows & (1 << r)) == 0) {
+                    // Numbers without a label yet keep their own value, past the range of the labels
+                    int number = state.cells[r * size + state.cols[i]];
+                    value = (number == 0) ? 0 : ((state.labels[number] != 0) ? state.labels[number] : size + number);
+                }
+                key[2 + r * size + i] = value;
+            }
+        }
+        return new Future(key);
+    }
+
+    private static void resetBest (int [] best) {
+        for (int i = 0; i < best.length; i++) {
+            best[i] = Integer.MAX_VALUE;
+        }
+    }
+
+    private static void resetLabels (State state) {
+        for (int i = 0; i < state.labels.length; i++) {
+            state.labels[i] = 0;
+        }
+        state.nextLabel = 1;
+    }
+
+    /**
+     * Reads row r of the state's board in its column order into row, giving out labels as it goes.
+     * @return How the row compares to best. Reading stops as soon as the row is known to be bigger.
+     */
+    private static int compareRow (State state, int r, int size, int [] best, int [] row) {
+        int cmp = 0;
+        for (int i = 0; i < size; i++) {
+            int number = state.cells[r * size + state.cols[i]];
+            int label = 0;
+            if (number != 0) {
+                label = state.labels[number];
+                if (label == 0) {
+                    label = state.nextLabel++;
+                    state.labels[number] = label;
+                }
+            }
+            row[i] = label;
+            if (cmp == 0) {
+                if (label > best[i]) {
+                    return 1;
+                }
+                if (label < best[i]) {
+                    cmp = -1;
+                }
+            }
+        }
+        return cmp;
+    }
+
+    private static boolean canFollow (State state, int r, int k, int boxSize) {
+        int band = r / boxSize;
+        if (k % boxSize == 0) {
+            return (state.usedBands & (1 << band)) == 0;
+        }
+        if (band != state.rows[k - 1] / boxSize) {
+            return false;
+        }
+        for (int i = k - k % boxSize; i < k; i++) {
+            if (state.rows[i] == r) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static State pick (State state, int r, int k, int boxSize) {
+        state.rows[k] = r;
+        state.usedBands |= 1 << (r / boxSize);
+        return state;
+    }
+
+    /**
+     * @return Every order of the stacks combined with every order of the columns within each stack.
+     */
+    private static int [][] columnOrders (int boxSize) {
+        final int size = boxSize * boxSize;
+        final int [] perm = new int [boxSize];
+        long count = 1;
+        for (int i = 2; i <= boxSize; i++) {
+            count *= i;
+        }
+        final long stackOrders = count;
+        for (int i = 0; i < boxSize; i++) {
+            count *= stackOrders;
+        }
+
+        int [][] orders = new int [(int) count][size];
+        for (int n = 0; n < orders.length; n++) {
+            long index = SudokuGenerator.Board.permutation(n, perm, boxSize);
+            for (int i = 0; i < size; i++) {
+                orders[n][i] = perm[i / boxSize] * boxSize;
+            }
+            for (int stack = 0; stack < boxSize; stack++) {
+                index = SudokuGenerator.Board.permutation(index, perm, boxSize);
+                for (int i = 0; i < boxSize; i++) {
+                    orders[n][stack * boxSize + i] += perm[i];
+                }
+            }
+        }
+        return orders;
+    }
+}
@@ -0,0 +1,552 @@
+package com.jdrago.sudoku;
+
+/**
+ * Solves a sudoku the way a person would, one deduction at a time, always using the easiest technique that
+ * makes progress, and grades it by the hardest technique it needed. A sudoku the techniques cannot finish
+ * is graded EXTREME.
+ *
+ * Candidates are kept as one bit per number, like in BitmaskSolver. A grader keeps its working state between
+ * calls, so it must not be shared between threads.
+ */
+public class DifficultyGrader {
+
+    /**
+     * The techniques, from the easiest to the hardest, and the difficulty a sudoku needing them gets.
+     */
+    public enum Technique {
+        NAKED_SINGLE(SudokuGenerator.Difficulty.EASY, 1),
+        HIDDEN_SINGLE(SudokuGenerator.Difficulty.EASY, 2),
+        POINTING(SudokuGenerator.Difficulty.MEDIUM, 5),     // Also covers box/line reduction
+        NAKED_PAIR(SudokuGenerator.Difficulty.MEDIUM, 6),
+        HIDDEN_PAIR(SudokuGenerator.Difficulty.HARD, 10),
+        NAKED_TRIPLE(SudokuGenerator.Difficulty.HARD, 12),
+        HIDDEN_TRIPLE(SudokuGenerator.Difficulty.HARD, 14),
+        X_WING(SudokuGenerator.Difficulty.HARD, 16);
+
+        final SudokuGenerator.Difficulty difficulty;
+        final int cost;
+
+        Technique(SudokuGenerator.Difficulty difficulty, int cost) {
+            this.difficulty = difficulty;
+            this.cost = cost;
+        }
+    }
+
+    private static final Technique TECHNIQUES[] = Technique.values();
+
+    private final int size;
+    private final int boxSize;
+    private final int cellCount;
+
+    private final int [] cellRow;
+    private final int [] cellCol;
+    private final int [] cellBox;
+    private final int [][] units; // Rows, then columns, then boxes
+    private final int [][] peers;
+
+    private final int [] values;     // Number in each cell, 0 for empty
+    private final int [] candidates; // Candidate bits of each empty cell, 0 once filled
+    private int empty;
+    private boolean broken;          // A cell or a unit ran out of candidates
+
+    // Scratch for the subset searches, so that grading allocates nothing
+    private final int [] picked;     // Cells of the naked subset so far, by index in the unit
+    private final int [] where;      // Cells of the unit each number can go in, for hidden subsets
+
+    private Technique hardest;
+    private int score;
+
+    // Cell most recently filled by step(), -1 if the last step only removed candidates.
+    private int lastCell = -1;
+
+    public DifficultyGrader() {
+        this(SudokuGenerator.Board.SIZE);
+    }
+
+    /**
+     * @param size The size of the boards this grader will be given.
+     */
+    public DifficultyGrader(int size) {
+        if (!SudokuGenerator.Board.isValidSize(size)) {
+            throw new IllegalArgumentException("Unsupported board size " + size);
+        }
+        this.size = size;
+        this.boxSize = (int)Math.sqrt(size);
+        this.cellCount = size * size;
+
+        cellRow = new int [cellCount];
+        cellCol = new int [cellCount];
+        cellBox = new int [cellCount];
+        units = new int [size * 3][size];
+        int [] boxFill = new int [size];
+        for (int i = 0; i < cellCount; i++) {
+            int y = i / size;
+            int x = i % size;
+            int box = (y / boxSize) * boxSize + (x / boxSize);
+            cellRow[i] = y;
+            cellCol[i] = x;
+            cellBox[i] = box;
+            units[y][x] = i;
+            units[size + x][y] = i;
+            units[size * 2 + box][boxFill[box]++] = i;
+        }
+
+        final int peerCount = (size - 1) * 2 + (boxSize - 1) * (boxSize - 1);
+        peers = new int [cellCount][peerCount];
+        for (int i = 0; i < cellCount; i++) {
+            int n = 0;
+            for (int j = 0; j < cellCount; j++) {
+                if ((j != i) && ((cellRow[j] == cellRow[i]) || (cellCol[j] == cellCol[i]) || (cellBox[j] == cellBox[i]))) {
+                    peers[i][n++] = j;
+                }
+            }
+        }
+
+        values = new int [cellCount];
+        candidates = new int [cellCount];
+        picked = new int [size];
+        where = new int [size];
+    }
+
+    /**
+     * Grades a sudoku.
+     * @param board The sudoku to grade. It is not modified.
+     * @return The difficulty of the hardest technique needed, or EXTREME if the techniques cannot solve it.
+     */
+    public SudokuGenerator.Difficulty grade (SudokuGenerator.Board board) {
+        load(board);
+        while (empty > 0) {
+            if (step() == null) {
+                break;
+            }
+        }
+        if (!isSolved()) {
+            return SudokuGenerator.Difficulty.EXTREME;
+        }
+        return (hardest == null) ? SudokuGenerator.Difficulty.EASY : hardest.difficulty;
+    }
+
+    /**
+     * @return The hardest technique the last grade() or the steps since load() needed, or null if none was needed.
+     */
+    public Technique getHardest () {
+        return hardest;
+    }
+
+    /**
+     * @return The sum of the costs of every step since load(). Higher is harder, for sudokus of the same grade.
+     */
+    public int getScore () {
+        return score;
+    }
+
+    /**
+     * @return If every cell is filled in.
+     */
+    public boolean isSolved () {
+        return (empty == 0) && !broken;
+    }
+
+    /**
+     * @return The cell filled in by the last step(), as y * size + x, or -1 if it only removed candidates.
+     */
+    public int getLastCell () {
+        return lastCell;
+    }
+
+    /**
+     * @return The number in a cell, 0 if it is still empty.
+     */
+    public int getNumber (int x, int y) {
+        return values[y * size + x];
+    }
+
+    /**
+     * @return The candidates left in an empty cell, bit (n - 1) standing for number n, or 0 if the cell is filled.
+     */
+    public int getCandidates (int x, int y) {
+        return candidates[y * size + x];
+    }
+
+    /**
+     * Starts solving a board from scratch. The board is not modified.
+     */
+    public void load (SudokuGenerator.Board board) {
+        if (board.getSize() != size) {
+            throw new IllegalArgumentException("Grader for size " + size + " given a board of size " + board.getSize());
+        }
+        final int all = (1 << size) - 1;
+        for (int i = 0; i < cellCount; i++) {
+            values[i] = 0;
+            candidates[i] = all;
+        }
+        empty = cellCount;
+        broken = false;
+        hardest = null;
+        score = 0;
+
+        for (int i = 0; i < cellCount; i++) {
+            int num = board.getNumber(cellCol[i], cellRow[i]);
+            if (num == 0) {
+                continue;
+            }
+            if ((candidates[i] & (1 << (num - 1))) == 0) {
+                broken = true;
+            }
+            place(i, num);
+        }
+        lastCell = -1;
+    }
+
+    /**
+     * Starts solving from a state kept somewhere else, such as a game in progress, without placing anything.
+     * @param numbers The number in each cell, row by row, 0 for empty.
+     * @param cellCandidates The candidates left in each empty cell, bit (n - 1) standing for number n. Both arrays
+     *                       are copied.
+     */
+    public void load (int [] numbers, int [] cellCandidates) {
+        if ((numbers.length != cellCount) || (cellCandidates.length != cellCount)) {
+            throw new IllegalArgumentException("Grader for " + cellCount + " cells given " + numbers.length);
+        }
+        empty = 0;
+        broken = false;
+        hardest = null;
+        score = 0;
+        for (int i = 0; i < cellCount; i++) {
+            values[i] = numbers[i];
+            candidates[i] = (numbers[i] == 0) ? cellCandidates[i] : 0;
+            if (numbers[i] == 0) {
+                empty++;
+                if (candidates[i] == 0) {
+                    broken = true;
+                }
+            }
+        }
+        lastCell = -1;
+    }
+
+    /**
+     * Makes one deduction with the easiest technique that finds one.
+     * @return The technique used, or null if none of them could make progress.
+     */
+    public Technique step () {
+        lastCell = -1;
+        if (broken || (empty == 0)) {
+            return null;
+        }
+        for (Technique technique : TECHNIQUES) {
+            if (apply(technique)) {
+                if ((hardest == null) || (technique.compareTo(hardest) > 0)) {
+                    hardest = technique;
+                }
+                score += technique.cost;
+                return technique;
+            }
+        }
+        return null;
+    }
+
+    private boolean apply (Technique technique) {
+        switch (technique) {
+            case NAKED_SINGLE:
+                return nakedSingle();
+            case HIDDEN_SINGLE:
+                return hiddenSingle();
+            case POINTING:
+                return pointing();
+            case NAKED_PAIR:
+                return nakedSubset(2);
+            case HIDDEN_PAIR:
+                return hiddenSubset(2);
+            case NAKED_TRIPLE:
+                return nakedSubset(3);
+            case HIDDEN_TRIPLE:
+                return hiddenSubset(3);
+            case X_WING:
+                return xWing();
+        }
+        return false;
+    }
+
+    private void place (int cell, int num) {
+        final int bit = 1 << (num - 1);
+        values[cell] = num;
+        candidates[cell] = 0;
+        empty--;
+        lastCell = cell;
+        for (int peer : peers[cell]) {
+            if ((values[peer] == 0) && (candidates[peer] & bit) != 0) {
+                candidates[peer] &= ~bit;
+                if (candidates[peer] == 0) {
+                    broken = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes candidates from a cell.
+     * @return If any of them were still there.
+     */
+    private boolean eliminate (int cell, int bits) {
+        if ((candidates[cell] & bits) == 0) {
+            return false;
+        }
+        candidates[cell] &= ~bits;
+        if (candidates[cell] == 0) {
+            broken = true;
+        }
+        return true;
+    }
+
+    private boolean nakedSingle () {
+        for (int i = 0; i < cellCount; i++) {
+            int cands = candidates[i];
+            if ((values[i] == 0) && (cands != 0) && ((cands & (cands - 1)) == 0)) {
+                place(i, Integer.numberOfTrailingZeros(cands) + 1);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean hiddenSingle () {
+        for (int [] unit : units) {
+            int once = 0;
+            int twice = 0;
+            for (int cell : unit) {
+                twice |= once & candidates[cell];
+                once |= candidates[cell];
+            }
+            int singles = once & ~twice;
+            if (singles == 0) {
+                continue;
+            }
+            int bit = singles & -singles;
+            for (int cell : unit) {
+                if ((candidates[cell] & bit) != 0) {
+                    place(cell, Integer.numberOfTrailingZeros(bit) + 1);
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * A number whose candidates in a box all lie on one line can be removed from the rest of that line, and a
+     * number whose candidates on a line all lie in one box can be removed from the rest of that box.
+     */
+    private boolean pointing () {
+        for (int box = 0; box < size; box++) {
+            for (int line = 0; line < size * 2; line++) {
+                if (lockedCandidates(units[size * 2 + box], units[line])) {
+                    return true;
+                }
+                if (lockedCandidates(units[line], units[size * 2 + box])) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Removes from the rest of target every number whose candidates in source all lie in target.
+     * @return If anything was removed.
+     */
+    private boolean lockedCandidates (int [] source, int [] target) {
+        int inside = 0;
+        int outside = 0;
+        for (int cell : source) {
+            if (contains(target, cell)) {
+                inside |= candidates[cell];
+            } else {
+                outside |= candidates[cell];
+            }
+        }
+        int locked = inside & ~outside;
+        if (locked == 0) {
+            return false;
+        }
+        boolean progress = false;
+        for (int cell : target) {
+            if (!contains(source, cell)) {
+                progress |= eliminate(cell, locked);
+            }
+        }
+        return progress;
+    }
+
+    private boolean contains (int [] unit, int cell) {
+        if (unit == units[cellRow[cell]] || unit == units[size + cellCol[cell]] || unit == units[size * 2 + cellBox[cell]]) {
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * When n empty cells of a unit have only n numbers between them, no other cell of the unit can take those numbers.
+     */
+    private boolean nakedSubset (int n) {
+        for (int [] unit : units) {
+            if (nakedSubset(unit, n, 0, 0, 0, picked)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean nakedSubset (int [] unit, int n, int start, int depth, int union, int [] picked) {
+        if (depth == n) {
+            if (Integer.bitCount(union) != n) {
+                return false;
+            }
+            boolean progress = false;
+            for (int k = 0; k < size; k++) {
+                if (!isPicked(picked, n, k)) {
+                    progress |= eliminate(unit[k], union);
+                }
+            }
+            return progress;
+        }
+        for (int k = start; k < size; k++) {
+            int cands = candidates[unit[k]];
+            if (cands == 0 || Integer.bitCount(cands) > n) {
+                continue;
+            }
+            int next = union | cands;
+            if (Integer.bitCount(next) > n) {
+                continue;
+            }
+            picked[depth] = k;
+            if (nakedSubset(unit, n, k + 1, depth + 1, next, picked)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isPicked (int [] picked, int n, int k) {
+        for (int i = 0; i < n; i++) {
+            if (picked[i] == k) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * When n numbers can only go in the same n cells of a unit, those cells cannot take any other number.
+     */
+    private boolean hiddenSubset (int n) {
+        for (int [] unit : units) {
+            // where[d] has bit k set if number d + 1 can go in cell unit[k]
+            for (int d = 0; d < size; d++) {
+                where[d] = 0;
+            }
+            for (int k = 0; k < size; k++) {
+                int cands = candidates[unit[k]];
+                while (cands != 0) {
+                    int d = Integer.numberOfTrailingZeros(cands);
+                    cands &= cands - 1;
+                    where[d] |= 1 << k;
+                }
+            }
+            if (hiddenSubset(unit, where, n, 0, 0, 0, 0)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean hiddenSubset (int [] unit, int [] where, int n, int start, int depth, int numbers, int cells) {
+        if (depth == n) {
+            if (Integer.bitCount(cells) != n) {
+                return false;
+            }
+            boolean progress = false;
+            for (int k = 0; k < size; k++) {
+                if ((cells & (1 << k)) != 0) {
+                    progress |= eliminate(unit[k], ~numbers);
+                }
+            }
+            return progress;
+        }
+        for (int d = start; d < size; d++) {
+            int count = Integer.bitCount(where[d]);
+            if (count < 2 || count > n) {
+                continue;
+            }
+            int next = cells | where[d];
+            if (Integer.bitCount(next) > n) {
+                continue;
+            }
+            if (hiddenSubset(unit, where, n, d + 1, depth + 1, numbers | (1 << d), next)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * When a number can only go in the same two columns on two rows, it can be removed from the rest of those
+     * columns, and the same with rows and columns swapped.
+     */
+    private boolean xWing () {
+        for (int d = 0; d < size; d++) {
+            final int bit = 1 << d;
+            if (xWing(bit, 0, size) || xWing(bit, size, 0)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param base The first unit of the lines searched, rows (0) or columns (size).
+     * @param cross The first unit of the lines crossing them.
+     */
+    private boolean xWing (int bit, int base, int cross) {
+        for (int a = 0; a < size; a++) {
+            int first = positions(units[base + a], bit);
+            if (Integer.bitCount(first) != 2) {
+                continue;
+            }
+            for (int b = a + 1; b < size; b++) {
+                if (positions(units[base + b], bit) != first) {
+                    continue;
+                }
+                boolean progress = false;
+                int lines = first;
+                while (lines != 0) {
+                    int k = Integer.numberOfTrailingZeros(lines);
+                    lines &= lines - 1;
+                    int [] crossing = units[cross + k];
+                    for (int i = 0; i < size; i++) {
+                        if ((i != a) && (i != b)) {
+                            progress |= eliminate(crossing[i], bit);
+                        }
+                    }
+                }
+                if (progress) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return Bit k set if the number can go in unit[k].
+     */
+    private int positions (int [] unit, int bit) {
+        int mask = 0;
+        for (int k = 0; k < size; k++) {
+            if ((candidates[unit[k]] & bit) != 0) {
+                mask |= 1 << k;
+            }
+        }
+        return mask;
+    }
+}
@@ -0,0 +1,311 @@
+package com.jdrago.sudoku;
+
+import java.util.Random;
+
+/**
+ * Dancing Links (Algorithm X) solver working on the exact-cover form of sudoku.
+ * There is one column per constraint (cell filled, digit in row, digit in column,
+ * digit in box) and one row per (cell, digit) candidate, so a 9x9 board gives
+ * 324 columns and 729 rows of 4 nodes each.
+ *
+ * All links live in preallocated int arrays. A solve restores the pristine links
+ * with System.arraycopy, covers the givens and runs the search, so nothing is
+ * allocated per call.
+ */
+public class DlxSolver implements SolverEngine {
+
+    private static final int ROOT = 0;
+
+    private final int size;
+    private final int cellCount;
+    private final int columnCount;
+    private final int nodeCount;
+
+    // Nodes 1..columnCount are the column headers, the rest are matrix nodes.
+    private final int [] left;
+    private final int [] right;
+    private final int [] up;
+    private final int [] down;
+    private final int [] column;
+    private final int [] rowOf;
+    private final int [] columnSize;
+
+    // Pristine copies of the links, restored before every solve.
+    private final int [] initLeft;
+    private final int [] initRight;
+    private final int [] initUp;
+    private final int [] initDown;
+    private final int [] initColumnSize;
+
+    // First node of each matrix row, indexed by (cell * size + digit - 1).
+    private final int [] rowNode;
+
+    // Rows selected by the search, by depth.
+    private final int [] partial;
+
+    private Random random;
+    private int solutions = 0;
+    private int solutionLimit = 0;
+
+    private long nodeLimit = 0;
+    private long nodesLeft = 0;
+    private boolean gaveUp = false;
+
+    private long nodes = 0;
+    private long backtracks = 0;
+
+    public DlxSolver() {
+        this(SudokuGenerator.Board.SIZE);
+    }
+
+    /**
+     * @param size The size of the boards this solver will be given.
+     */
+    public DlxSolver(int size) {
+        if (!SudokuGenerator.Board.isValidSize(size)) {
+            throw new IllegalArgumentException("Unsupported board size " + size);
+        }
+        this.size = size;
+        cellCount = size * size;
+        columnCount = cellCount * 4;
+        final int rowCount = cellCount * size;
+        nodeCount = 1 + columnCount + rowCount * 4;
+
+        left = new int [nodeCount];
+        right = new int [nodeCount];
+        up = new int [nodeCount];
+        down = new int [nodeCount];
+        column = new int [nodeCount];
+        rowOf = new int [nodeCount];
+        columnSize = new int [columnCount + 1];
+        rowNode = new int [rowCount];
+        partial = new int [cellCount];
+
+        for (int c = 0; c <= columnCount; c++) {
+            left[c] = (c == 0) ? columnCount : c - 1;
+            right[c] = (c == columnCount) ? ROOT : c + 1;
+            up[c] = c;
+            down[c] = c;
+            column[c] = c;
+        }
+
+        final int boxSize = (int)Math.sqrt(size);
+        int node = columnCount + 1;
+        for (int cell = 0; cell < cellCount; cell++) {
+            int y = cell / size;
+            int x = cell % size;
+            int box = (y / boxSize) * boxSize + (x / boxSize);
+            for (int d = 0; d < size; d++) {
+                int row = cell * size + d;
+                rowNode[row] = node;
+
+                int first = node;
+                appendNode(node++, row, 1 + cell);
+                appendNode(node++, row, 1 + cellCount + y * size + d);
+                appendNode(node++, row, 1 + cellCount * 2 + x * size + d);
+                appendNode(node++, row, 1 + cellCount * 3 + box * size + d);
+                for (int n = first; n < node; n++) {
+                    left[n] = (n == first) ? node - 1 : n - 1;
+                    right[n] = (n == node - 1) ? first : n + 1;
+                }
+            }
+        }
+
+        initLeft = left.clone();
+        initRight = right.clone();
+        initUp = up.clone();
+        initDown = down.clone();
+        initColumnSize = columnSize.clone();
+    }
+
+    private void appendNode (int node, int row, int col) {
+        column[node] = col;
+        rowOf[node] = row;
+        up[node] = up[col];
+        down[node] = col;
+        down[up[col]] = node;
+        up[col] = node;
+        columnSize[col]++;
+    }
+
+    @Override
+    public boolean solve (SudokuGenerator.Board board, Random random) {
+        this.random = random;
+        solutions = 0;
+        solutionLimit = 1;
+        boolean solved = loadBoard(board) && search(0);
+        this.random = null;
+        if (!solved || gaveUp) {
+            return false;
+        }
+
+        for (int k = 0; k < cellCount; k++) {
+            int row = partial[k];
+            if (row < 0) {
+                continue;
+            }
+            int cell = row / size;
+            board.setNumber(cell % size, cell / size, row % size + 1);
+        }
+        return true;
+    }
+
+    @Override
+    public int countSolutions (SudokuGenerator.Board board, int limit) {
+        solutions = 0;
+        solutionLimit = limit;
+        if (limit > 0 && loadBoard(board)) {
+            search(0);
+        }
+        return gaveUp ? limit : solutions;
+    }
+
+    @Override
+    public boolean isUnique (SudokuGenerator.Board board) {
+        return countSolutions(board, 2) == 1;
+    }
+
+    @Override
+    public void setNodeLimit (long nodes) {
+        nodeLimit = nodes;
+    }
+
+    @Override
+    public long getNodeCount () {
+        return nodes;
+    }
+
+    @Override
+    public long getBacktrackCount () {
+        return backtracks;
+    }
+
+    /**
+     * Restores the full matrix and covers the columns satisfied by the givens.
+     * @return false if two givens already conflict.
+     */
+    private boolean loadBoard (SudokuGenerator.Board board) {
+        if (board.getSize() != size) {
+            throw new IllegalArgumentException("Solver for size " + size + " given a board of size " + board.getSize());
+        }
+        System.arraycopy(initLeft, 0, left, 0, nodeCount);
+        System.arraycopy(initRight, 0, right, 0, nodeCount);
+        System.arraycopy(initUp, 0, up, 0, nodeCount);
+        System.arraycopy(initDown, 0, down, 0, nodeCount);
+        System.arraycopy(initColumnSize, 0, columnSize, 0, columnCount + 1);
+        nodesLeft = nodeLimit;
+        gaveUp = false;
+
+        for (int k = 0; k < cellCount; k++) {
+            partial[k] = -1;
+        }
+
+        for (int cell = 0; cell < cellCount; cell++) {
+            int num = board.getNumber(cell % size, cell / size);
+            if (num == 0) {
+                continue;
+            }
+
+            // A column that is no longer linked in the header list was already
+            // covered by an earlier given, so the two givens clash.
+            int first = rowNode[cell * size + num - 1];
+            int n = first;
+            do {
+                int c = column[n];
+                if (right[left[c]] != c) {
+                    return false;
+                }
+                cover(c);
+                n = right[n];
+            } while (n != first);
+        }
+        return true;
+    }
+
+    private void cover (int c) {
+        right[left[c]] = right[c];
+        left[right[c]] = left[c];
+        for (int i = down[c]; i != c; i = down[i]) {
+            for (int j = right[i]; j != i; j = right[j]) {
+                up[down[j]] = up[j];
+                down[up[j]] = down[j];
+                columnSize[column[j]]--;
+            }
+        }
+    }
+
+    private void uncover (int c) {
+        for (int i = up[c]; i != c; i = up[i]) {
+            for (int j = left[i]; j != i; j = left[j]) {
+                columnSize[column[j]]++;
+                up[down[j]] = j;
+                down[up[j]] = j;
+            }
+        }
+        right[left[c]] = c;
+        left[right[c]] = c;
+    }
+
+    /**
+     * Algorithm X, always branching on the column with the fewest rows left.
+     * @return true once solutionLimit solutions have been found or the node limit is used up. The matrix is
+     * then left covered, which is fine since every solve starts by restoring it.
+     */
+    private boolean search (int depth) {
+        nodes++;
+        if (nodeLimit > 0 && --nodesLeft < 0) {
+            gaveUp = true;
+            return true;
+        }
+        if (right[ROOT] == ROOT) {
+            solutions++;
+            return solutions >= solutionLimit;
+        }
+
+        int best = right[ROOT];
+        for (int c = right[best]; c != ROOT; c = right[c]) {
+            if (columnSize[c] < columnSize[best]) {
+                best = c;
+                if (columnSize[c] <= 1) {
+                    break;
+                }
+            }
+        }
+        final int rows = columnSize[best];
+        if (rows == 0) {
+            backtracks++;
+            return false;
+        }
+
+        cover(best);
+
+        int r = down[best];
+        if (random != null) {
+            for (int skip = random.nextInt(rows); skip > 0; skip--) {
+                r = down[r];
+            }
+        }
+        for (int k = 0; k < rows; k++) {
+            if (r == best) {
+                r = down[r];
+            }
+
+            partial[depth] = rowOf[r];
+            for (int j = right[r]; j != r; j = right[j]) {
+                cover(column[j]);
+            }
+            if (search(depth + 1)) {
+                return true;
+            }
+            for (int j = left[r]; j != r; j = left[j]) {
+                uncover(column[j]);
+            }
+
+            r = down[r];
+        }
+        partial[depth] = -1;
+
+        uncover(best);
+        return false;
+    }
+}
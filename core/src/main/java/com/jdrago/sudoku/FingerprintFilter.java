@@ -0,0 +1,107 @@
+package com.jdrago.sudoku;
+
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+
+/**
+ * A Bloom filter of 64 bit fingerprints, kept in a direct buffer so that even a filter for tens of millions of
+ * puzzles costs no heap and a fixed amount of memory. It can wrongly report a new fingerprint as already seen,
+ * at a rate set when it is made, but never the other way around.
+ */
+public class FingerprintFilter {
+    // The biggest filter a direct buffer can hold, 2^30 bytes.
+    public static final long MAX_BYTES = 1L << 30;
+
+    private final LongBuffer words;
+    private final long bitMask;
+    private final int hashes;
+    private long count = 0;
+
+    /**
+     * @param bytes The memory to use, rounded down to a power of two from 8 up to MAX_BYTES.
+     * @param hashes How many bits each fingerprint sets.
+     */
+    public FingerprintFilter (long bytes, int hashes) {
+        if ((bytes < 8) || (hashes < 1)) {
+            throw new IllegalArgumentException("Bad filter size " + bytes + " with " + hashes + " hashes");
+        }
+        bytes = Long.highestOneBit(Math.min(bytes, MAX_BYTES));
+        words = ByteBuffer.allocateDirect((int) bytes).asLongBuffer();
+        bitMask = bytes * 8 - 1;
+        this.hashes = hashes;
+    }
+
+    /**
+     * Makes a filter big enough to hold the given number of fingerprints at the given false positive rate.
+     */
+    public static FingerprintFilter forCount (long expected, double falsePositiveRate) {
+        double ln2 = Math.log(2);
+        double bits = -Math.max(expected, 1) * Math.log(falsePositiveRate) / (ln2 * ln2);
+        long needed = Math.min((long) Math.ceil(bits / 8.0), MAX_BYTES);
+        long bytes = Long.highestOneBit(Math.max(needed, 8));
+        if (bytes < needed) {
+            bytes *= 2;
+        }
+        bytes = Math.min(bytes, MAX_BYTES);
+        int hashes = (int) Math.max(1, Math.round(bytes * 8.0 / Math.max(expected, 1) * ln2));
+        return new FingerprintFilter(bytes, hashes);
+    }
+
+    /**
+     * Adds a fingerprint.
+     * @return true if it was new, false if it (probably) had been added before.
+     */
+    public synchronized boolean add (long fingerprint) {
+        boolean added = false;
+        long h = fingerprint;
+        final long step = Long.rotateLeft(fingerprint, 32) | 1;
+        for (int i = 0; i < hashes; i++, h += step) {
+            long bit = h & bitMask;
+            int index = (int) (bit >>> 6);
+            long word = words.get(index);
+            long mask = 1L << bit;
+            if ((word & mask) == 0) {
+                words.put(index, word | mask);
+                added = true;
+            }
+        }
+        if (added) {
+            count++;
+        }
+        return added;
+    }
+
+    public synchronized boolean mightContain (long fingerprint) {
+        long h = fingerprint;
+        final long step = Long.rotateLeft(fingerprint, 32) | 1;
+        for (int i = 0; i < hashes; i++, h += step) {
+            long bit = h & bitMask;
+            if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return How many fingerprints have been added as new.
+     */
+    public synchronized long count () {
+        return count;
+    }
+
+    public long sizeInBytes () {
+        return (bitMask + 1) / 8;
+    }
+
+    public int getHashes () {
+        return hashes;
+    }
+
+    /**
+     * @return The chance that a fingerprint not added yet would be reported as seen, at the current fill.
+     */
+    public synchronized double falsePositiveRate () {
+        return Math.pow(1 - Math.exp(-hashes * (double) count / (bitMask + 1)), hashes);
+    }
+}
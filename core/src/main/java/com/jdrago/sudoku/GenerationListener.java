@@ -0,0 +1,58 @@
+package com.jdrago.sudoku;
+
+/**
+ * Receives what every generateSudoku call cost, attempt by attempt. It is called from the generating threads.
+ * A generator without one does no timing at all, so leaving it unset costs nothing.
+ * @see GenerationMetrics
+ */
+public interface GenerationListener {
+
+    /**
+     * What one attempt did. The generator reuses the same object for all of its attempts, so it is only valid
+     * during the onAttempt call.
+     */
+    class Attempt {
+        public SudokuGenerator.Difficulty difficulty;
+        public int number;
+
+        // Whether the attempt ended on a sudoku of the requested difficulty. Attempts given up because another
+        // thread already won are reported too, with found false.
+        public boolean found;
+
+        public int cluesRemoved;
+        public int removalsRejected;
+        public int uniquenessChecks;
+        public int uniqueResults;
+        public int grades;
+
+        // Work done by the solver engine, filling the grid included.
+        public long solverNodes;
+        public long solverBacktracks;
+
+        public long nanos;
+
+        void reset (SudokuGenerator.Difficulty difficulty, int number) {
+            this.difficulty = difficulty;
+            this.number = number;
+            found = false;
+            cluesRemoved = 0;
+            removalsRejected = 0;
+            uniquenessChecks = 0;
+            uniqueResults = 0;
+            grades = 0;
+            solverNodes = 0;
+            solverBacktracks = 0;
+            nanos = 0;
+        }
+    }
+
+    void onAttempt (Attempt attempt);
+
+    /**
+     * Called once at the end of every generateSudoku call.
+     * @param attempts The number of attempts completed, across all threads.
+     * @param nanos The wall time of the whole call.
+     * @param found false if the call was cancelled and returned null.
+     */
+    void onGenerated (SudokuGenerator.Difficulty difficulty, int attempts, long nanos, boolean found);
+}
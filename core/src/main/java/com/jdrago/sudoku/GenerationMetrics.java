@@ -0,0 +1,136 @@
+package com.jdrago.sudoku;
+
+import java.util.Locale;
+
+/**
+ * Adds up what generation costs for each difficulty, along with a histogram of the wall time per puzzle.
+ * Safe to share between generators running on different threads.
+ */
+public class GenerationMetrics implements GenerationListener {
+
+    // Histogram bucket n counts the puzzles that took from 2^n up to 2^(n+1) microseconds.
+    public static final int BUCKETS = 32;
+
+    /**
+     * Totals for one difficulty.
+     */
+    public static class Totals {
+        public long puzzles;
+        public long cancelled;
+        public long attempts;
+        public long attemptsFound;
+        public long cluesRemoved;
+        public long removalsRejected;
+        public long uniquenessChecks;
+        public long uniqueResults;
+        public long grades;
+        public long solverNodes;
+        public long solverBacktracks;
+
+        // Time spent inside attempts, summed over all threads.
+        public long attemptNanos;
+
+        // Wall time of the generateSudoku calls.
+        public long wallNanos;
+        public long slowestNanos;
+        public final long [] histogram = new long [BUCKETS];
+
+        Totals copy () {
+            Totals copy = new Totals();
+            copy.puzzles = puzzles;
+            copy.cancelled = cancelled;
+            copy.attempts = attempts;
+            copy.attemptsFound = attemptsFound;
+            copy.cluesRemoved = cluesRemoved;
+            copy.removalsRejected = removalsRejected;
+            copy.uniquenessChecks = uniquenessChecks;
+            copy.uniqueResults = uniqueResults;
+            copy.grades = grades;
+            copy.solverNodes = solverNodes;
+            copy.solverBacktracks = solverBacktracks;
+            copy.attemptNanos = attemptNanos;
+            copy.wallNanos = wallNanos;
+            copy.slowestNanos = slowestNanos;
+            System.arraycopy(histogram, 0, copy.histogram, 0, BUCKETS);
+            return copy;
+        }
+    }
+
+    private final Totals [] totals;
+
+    public GenerationMetrics () {
+        totals = new Totals [SudokuGenerator.Difficulty.values().length];
+        reset();
+    }
+
+    public synchronized void reset () {
+        for (int i = 0; i < totals.length; i++) {
+            totals[i] = new Totals();
+        }
+    }
+
+    /**
+     * @return A copy of the totals so far for the given difficulty.
+     */
+    public synchronized Totals get (SudokuGenerator.Difficulty difficulty) {
+        return totals[difficulty.ordinal()].copy();
+    }
+
+    @Override
+    public synchronized void onAttempt (Attempt attempt) {
+        Totals t = totals[attempt.difficulty.ordinal()];
+        t.attempts++;
+        if (attempt.found) {
+            t.attemptsFound++;
+        }
+        t.cluesRemoved += attempt.cluesRemoved;
+        t.removalsRejected += attempt.removalsRejected;
+        t.uniquenessChecks += attempt.uniquenessChecks;
+        t.uniqueResults += attempt.uniqueResults;
+        t.grades += attempt.grades;
+        t.solverNodes += attempt.solverNodes;
+        t.solverBacktracks += attempt.solverBacktracks;
+        t.attemptNanos += attempt.nanos;
+    }
+
+    @Override
+    public synchronized void onGenerated (SudokuGenerator.Difficulty difficulty, int attempts, long nanos, boolean found) {
+        Totals t = totals[difficulty.ordinal()];
+        if (!found) {
+            t.cancelled++;
+            return;
+        }
+        t.puzzles++;
+        t.wallNanos += nanos;
+        t.slowestNanos = Math.max(t.slowestNanos, nanos);
+        t.histogram[bucket(nanos)]++;
+    }
+
+    static int bucket (long nanos) {
+        long micros = nanos / 1000;
+        return (micros <= 0) ? 0 : Math.min(BUCKETS - 1, 63 - Long.numberOfLeadingZeros(micros));
+    }
+
+    /**
+     * @return One line of averages per difficulty that has generated anything.
+     */
+    @Override
+    public synchronized String toString () {
+        StringBuilder sb = new StringBuilder();
+        for (SudokuGenerator.Difficulty difficulty : SudokuGenerator.Difficulty.values()) {
+            Totals t = totals[difficulty.ordinal()];
+            if (t.puzzles == 0) {
+                continue;
+            }
+            sb.append(String.format(Locale.US,
+                    "%s: %d puzzles, %.2f ms each (slowest %.2f ms), %.1f attempts, %.0f solver nodes, " +
+                    "%.0f backtracks, %.1f uniqueness checks (%.0f%% unique), %.1f grades, %.1f clues removed\n",
+                    difficulty.name(), t.puzzles, t.wallNanos / 1e6 / t.puzzles, t.slowestNanos / 1e6,
+                    (double) t.attempts / t.puzzles, (double) t.solverNodes / t.puzzles,
+                    (double) t.solverBacktracks / t.puzzles, (double) t.uniquenessChecks / t.puzzles,
+                    (t.uniquenessChecks == 0) ? 0.0 : 100.0 * t.uniqueResults / t.uniquenessChecks,
+                    (double) t.grades / t.puzzles, (double) t.cluesRemoved / t.puzzles));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,224 @@
+package com.jdrago.sudoku;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Random;
+
+/**
+ * A read-only file of pre-generated puzzles, grouped by difficulty and read through a memory mapping so that
+ * opening even a very large bank costs no heap and no parsing.
+ *
+ * Layout, all integers big-endian:
+ *   int    MAGIC
+ *   int    VERSION
+ *   int    record size in bytes
+ *   int    number of difficulties (Difficulty.values().length when written)
+ *   then for every difficulty, in ordinal order:
+ *     int  offset of its first record from the start of the file
+ *     int  number of records
+ *   then the records, each a PuzzleCodec binary puzzle padded to the record size.
+ */
+public class PuzzleBank implements PuzzleSource {
+
+    public static final int MAGIC = 0x53444b42; // "SDKB"
+    public static final int VERSION = 1;
+    public static final int RECORD_SIZE = PuzzleCodec.MAX_ENCODED_LENGTH;
+
+    private static final int HEADER_SIZE = 16;
+    private static final int INDEX_ENTRY_SIZE = 8;
+
+    private final MappedByteBuffer buffer;
+    private final int recordSize;
+    private final int [] offsets;
+    private final int [] counts;
+    private final Random random = new Random();
+
+    private PuzzleBank(MappedByteBuffer buffer, int recordSize, int [] offsets, int [] counts) {
+        this.buffer = buffer;
+        this.recordSize = recordSize;
+        this.offsets = offsets;
+        this.counts = counts;
+    }
+
+    /**
+     * Maps a bank file and checks its header and index.
+     * @throws IOException If the file can't be read or is not a valid bank.
+     */
+    public static PuzzleBank open (File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Puzzle bank too large: " + file);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+            if ((size < HEADER_SIZE) || (buffer.getInt(0) != MAGIC) || (buffer.getInt(4) != VERSION)) {
+                throw new IOException("Not a puzzle bank: " + file);
+            }
+            int recordSize = buffer.getInt(8);
+            int stored = buffer.getInt(12);
+            if ((recordSize < PuzzleCodec.MAX_ENCODED_LENGTH) || (stored < 0)
+                    || (HEADER_SIZE + (long) stored * INDEX_ENTRY_SIZE > size)) {
+                throw new IOException("Corrupt puzzle bank header: " + file);
+            }
+
+            int difficulties = SudokuGenerator.Difficulty.values().length;
+            int [] offsets = new int [difficulties];
+            int [] counts = new int [difficulties];
+            for (int d = 0; d < Math.min(stored, difficulties); d++) {
+                int offset = buffer.getInt(HEADER_SIZE + d * INDEX_ENTRY_SIZE);
+                int count = buffer.getInt(HEADER_SIZE + d * INDEX_ENTRY_SIZE + 4);
+                if ((offset < 0) || (count < 0) || (offset + (long) count * recordSize > size)) {
+                    throw new IOException("Corrupt puzzle bank index: " + file);
+                }
+                offsets[d] = offset;
+                counts[d] = count;
+            }
+            return new PuzzleBank(buffer, recordSize, offsets, counts);
+        } finally {
+            // The mapping stays valid once the file is closed.
+            raf.close();
+        }
+    }
+
+    public int count (SudokuGenerator.Difficulty difficulty) {
+        return counts[difficulty.ordinal()];
+    }
+
+    /**
+     * Decodes one puzzle into the board, without allocating.
+     * @return false if the bank has no puzzle at that index.
+     */
+    public boolean read (SudokuGenerator.Difficulty difficulty, int index, SudokuGenerator.Board board) {
+        int d = difficulty.ordinal();
+        if ((index < 0) || (index >= counts[d])) {
+            return false;
+        }
+        PuzzleCodec.decode(buffer, offsets[d] + index * recordSize, board);
+        return true;
+    }
+
+    /**
+     * Decodes a random puzzle of the given difficulty into the board, without allocating.
+     * @return false if the bank has no puzzle of that difficulty.
+     */
+    public boolean pick (SudokuGenerator.Difficulty difficulty, SudokuGenerator.Board board) {
+        int count = counts[difficulty.ordinal()];
+        return (count > 0) && read(difficulty, random.nextInt(count), board);
+    }
+
+    @Override
+    public SudokuGenerator.Board take (SudokuGenerator.Difficulty difficulty) {
+        SudokuGenerator.Board board = new SudokuGenerator.Board();
+        return pick(difficulty, board) ? board : null;
+    }
+
+    /**
+     * Writes a bank one difficulty at a time. The header is reserved up front and filled in by close().
+     */
+    public static class Writer {
+        private final RandomAccessFile file;
+        private final int [] offsets;
+        private final int [] counts;
+        private final boolean [] written;
+        private final ByteBuffer header;
+
+        // Records are collected here and written out a chunk at a time.
+        private final byte [] chunk = new byte [RECORD_SIZE * 1024];
+        private int chunkUsed = 0;
+        private long position;
+
+        private SudokuGenerator.Difficulty section = null;
+        private FingerprintFilter filter = null;
+
+        public Writer (File output) throws IOException {
+            int difficulties = SudokuGenerator.Difficulty.values().length;
+            offsets = new int [difficulties];
+            counts = new int [difficulties];
+            written = new boolean [difficulties];
+            header = ByteBuffer.allocate(HEADER_SIZE + difficulties * INDEX_ENTRY_SIZE);
+
+            file = new RandomAccessFile(output, "rw");
+            file.setLength(0);
+            file.write(header.array());
+            position = header.capacity();
+        }
+
+        /**
+         * Starts the records of a difficulty. Every difficulty can have one section at most.
+         */
+        public void startSection (SudokuGenerator.Difficulty difficulty) throws IOException {
+            int d = difficulty.ordinal();
+            if (written[d]) {
+                throw new IllegalStateException("Section already written: " + difficulty);
+            }
+            written[d] = true;
+            section = difficulty;
+            if (position > Integer.MAX_VALUE) {
+                throw new IOException("Puzzle bank too large");
+            }
+            offsets[d] = (int) position;
+        }
+
+        /**
+         * Skips puzzles whose canonical fingerprint is already in the filter, and adds the fingerprints of the
+         * ones written. The filter can be shared between writers to dedupe across banks.
+         * @param filter The filter to use, or null to write every puzzle.
+         */
+        public void setFilter (FingerprintFilter filter) {
+            this.filter = filter;
+        }
+
+        /**
+         * @return false if the puzzle was skipped as a duplicate.
+         */
+        public boolean add (SudokuGenerator.Board board) throws IOException {
+            if (section == null) {
+                throw new IllegalStateException("No section started");
+            }
+            if ((filter != null) && !filter.add(CanonicalForm.fingerprint(board))) {
+                return false;
+            }
+            if (chunkUsed == chunk.length) {
+                flush();
+            }
+            int length = PuzzleCodec.encode(board, chunk, chunkUsed);
+            for (int i = chunkUsed + length; i < chunkUsed + RECORD_SIZE; i++) {
+                chunk[i] = 0;
+            }
+            chunkUsed += RECORD_SIZE;
+            position += RECORD_SIZE;
+            counts[section.ordinal()]++;
+            return true;
+        }
+
+        private void flush () throws IOException {
+            file.write(chunk, 0, chunkUsed);
+            chunkUsed = 0;
+        }
+
+        public void close () throws IOException {
+            try {
+                flush();
+                header.putInt(MAGIC);
+                header.putInt(VERSION);
+                header.putInt(RECORD_SIZE);
+                header.putInt(offsets.length);
+                for (int d = 0; d < offsets.length; d++) {
+                    header.putInt(offsets[d]);
+                    header.putInt(counts[d]);
+                }
+                file.seek(0);
+                file.write(header.array());
+            } finally {
+                file.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package com.jdrago.sudoku;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Compact binary and text forms of a puzzle, for storing and shipping large numbers of them.
+ *
+ * The binary form starts with an 81-bit mask of the given cells (11 bytes, cell k in bit k & 7 of byte k >> 3),
+ * followed by the value of every given in cell order, packed as 4-bit nibbles with the low nibble first.
+ * A puzzle with 44 givens takes 33 bytes, and no puzzle takes more than MAX_ENCODED_LENGTH.
+ *
+ * The text form is the usual 81 characters, one digit per cell in row order, with 0 for an empty cell.
+ *
+ * Nothing here allocates when the caller supplies the buffers and the board.
+ * Both forms are for 9x9 boards only, other sizes are rejected with an IllegalArgumentException.
+ */
+public final class PuzzleCodec {
+
+    public static final int CELLS = SudokuGenerator.Board.SIZE * SudokuGenerator.Board.SIZE;
+    public static final int MASK_LENGTH = (CELLS + 7) / 8;
+    public static final int MAX_ENCODED_LENGTH = MASK_LENGTH + (CELLS + 1) / 2;
+    public static final int DIGITS_LENGTH = CELLS;
+
+    private PuzzleCodec() {
+    }
+
+    private static void checkSize (SudokuGenerator.Board board) {
+        if (board.getSize() != SudokuGenerator.Board.SIZE) {
+            throw new IllegalArgumentException("Only " + SudokuGenerator.Board.SIZE + "x" + SudokuGenerator.Board.SIZE + " boards can be encoded");
+        }
+    }
+
+    private static int number (SudokuGenerator.Board board, int cell) {
+        return board.getNumber(cell % SudokuGenerator.Board.SIZE, cell / SudokuGenerator.Board.SIZE);
+    }
+
+    /**
+     * @return The number of bytes encode() will write for this board.
+     */
+    public static int encodedLength (SudokuGenerator.Board board) {
+        checkSize(board);
+        int givens = 0;
+        for (int k = 0; k < CELLS; k++) {
+            if (number(board, k) != 0) {
+                givens++;
+            }
+        }
+        return MASK_LENGTH + (givens + 1) / 2;
+    }
+
+    /**
+     * Encodes the non-empty cells of the board.
+     * @param out Must have room for encodedLength(board) bytes, MAX_ENCODED_LENGTH is always enough.
+     * @return The number of bytes written.
+     */
+    public static int encode (SudokuGenerator.Board board, byte [] out, int offset) {
+        checkSize(board);
+        for (int i = 0; i < MASK_LENGTH; i++) {
+            out[offset + i] = 0;
+        }
+
+        int pos = offset + MASK_LENGTH;
+        boolean high = false;
+        for (int k = 0; k < CELLS; k++) {
+            int v = number(board, k);
+            if (v == 0) {
+                continue;
+            }
+            out[offset + (k >> 3)] |= (byte)(1 << (k & 7));
+            if (high) {
+                out[pos] |= (byte)(v << 4);
+                pos++;
+            } else {
+                out[pos] = (byte)v;
+            }
+            high = !high;
+        }
+        if (high) {
+            pos++;
+        }
+        return pos - offset;
+    }
+
+    /**
+     * Decodes a puzzle into the board. Givens are marked as constants, every other cell is cleared.
+     * @return The number of bytes read.
+     * @throws IllegalArgumentException If a value is out of range.
+     */
+    public static int decode (byte [] in, int offset, SudokuGenerator.Board board) {
+        checkSize(board);
+        int pos = offset + MASK_LENGTH;
+        boolean high = false;
+        for (int k = 0; k < CELLS; k++) {
+            int v = 0;
+            if ((in[offset + (k >> 3)] & (1 << (k & 7))) != 0) {
+                if (high) {
+                    v = (in[pos++] >> 4) & 0xf;
+                } else {
+                    v = in[pos] & 0xf;
+                }
+                high = !high;
+                checkValue(v);
+            }
+            set(board, k, v);
+        }
+        if (high) {
+            pos++;
+        }
+        return pos - offset;
+    }
+
+    /**
+     * Same as decode(byte[], int, Board), reading with absolute gets so the buffer position is left alone.
+     * Meant for memory-mapped puzzle files.
+     */
+    public static int decode (ByteBuffer in, int offset, SudokuGenerator.Board board) {
+        checkSize(board);
+        int pos = offset + MASK_LENGTH;
+        boolean high = false;
+        for (int k = 0; k < CELLS; k++) {
+            int v = 0;
+            if ((in.get(offset + (k >> 3)) & (1 << (k & 7))) != 0) {
+                if (high) {
+                    v = (in.get(pos++) >> 4) & 0xf;
+                } else {
+                    v = in.get(pos) & 0xf;
+                }
+                high = !high;
+                checkValue(v);
+            }
+            set(board, k, v);
+        }
+        if (high) {
+            pos++;
+        }
+        return pos - offset;
+    }
+
+    /**
+     * Writes the 81 character form of the board.
+     */
+    public static void toDigits (SudokuGenerator.Board board, char [] out, int offset) {
+        checkSize(board);
+        for (int k = 0; k < CELLS; k++) {
+            out[offset + k] = (char)('0' + number(board, k));
+        }
+    }
+
+    public static String toDigits (SudokuGenerator.Board board) {
+        char [] digits = new char [DIGITS_LENGTH];
+        toDigits(board, digits, 0);
+        return new String(digits);
+    }
+
+    /**
+     * Reads the 81 character form into the board. '0' and '.' both mean an empty cell.
+     * @throws IllegalArgumentException If the text is too short or holds anything else.
+     */
+    public static void fromDigits (CharSequence in, int offset, SudokuGenerator.Board board) {
+        checkSize(board);
+        if (in.length() - offset < DIGITS_LENGTH) {
+            throw new IllegalArgumentException("Expected " + DIGITS_LENGTH + " cells");
+        }
+        for (int k = 0; k < CELLS; k++) {
+            char c = in.charAt(offset + k);
+            int v = (c == '.') ? 0 : c - '0';
+            if (v != 0) {
+                checkValue(v);
+            }
+            set(board, k, v);
+        }
+    }
+
+    private static void checkValue (int v) {
+        if ((v < 1) || (v > SudokuGenerator.Board.SIZE)) {
+            throw new IllegalArgumentException("Bad cell value " + v);
+        }
+    }
+
+    private static void set (SudokuGenerator.Board board, int cell, int v) {
+        int x = cell % SudokuGenerator.Board.SIZE;
+        int y = cell / SudokuGenerator.Board.SIZE;
+        board.setNumber(x, y, v);
+        board.setConst(x, y, v != 0);
+    }
+}
@@ -0,0 +1,13 @@
+package com.jdrago.sudoku;
+
+/**
+ * Somewhere new games can come from without running the generator on the caller's thread.
+ */
+public interface PuzzleSource {
+
+    /**
+     * @param difficulty The difficulty of the puzzle wanted.
+     * @return A ready puzzle, or null if none is available right now.
+     */
+    SudokuGenerator.Board take (SudokuGenerator.Difficulty difficulty);
+}
@@ -0,0 +1,160 @@
+package com.jdrago.sudoku;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.Random;
+
+/**
+ * Turns a few verified puzzles into as many new ones as are wanted. Every puzzle that comes from the upstream
+ * source is kept as a seed, and when upstream has nothing ready a random symmetry transform of a seed is served
+ * instead. A transform costs a few microseconds and keeps both the unique solution and the difficulty, so the
+ * game never has to wait for the generator once a seed of the right difficulty is known.
+ */
+public class SeedPuzzleSource implements PuzzleSource {
+    private final PuzzleSource upstream;
+    private final int capacity;
+    private final Random random = new Random();
+    private final EnumMap<SudokuGenerator.Difficulty, ArrayList<SudokuGenerator.Board>> seeds;
+
+    // Where the next seed of each difficulty goes once the list is full, so the oldest is replaced first.
+    private final EnumMap<SudokuGenerator.Difficulty, Integer> nextSlot;
+
+    /**
+     * @param upstream Where fresh puzzles come from, or null to only serve transforms of the seeds.
+     * @param capacity How many seeds to keep for each difficulty.
+     */
+    public SeedPuzzleSource(PuzzleSource upstream, int capacity) {
+        this.upstream = upstream;
+        this.capacity = capacity;
+        seeds = new EnumMap<SudokuGenerator.Difficulty, ArrayList<SudokuGenerator.Board>>(SudokuGenerator.Difficulty.class);
+        nextSlot = new EnumMap<SudokuGenerator.Difficulty, Integer>(SudokuGenerator.Difficulty.class);
+        for (SudokuGenerator.Difficulty difficulty : SudokuGenerator.Difficulty.values()) {
+            seeds.put(difficulty, new ArrayList<SudokuGenerator.Board>(capacity));
+            nextSlot.put(difficulty, 0);
+        }
+    }
+
+    @Override
+    public SudokuGenerator.Board take(SudokuGenerator.Difficulty difficulty) {
+        SudokuGenerator.Board board = (upstream == null) ? null : upstream.take(difficulty);
+        if (board != null) {
+            addSeed(difficulty, board);
+            return board;
+        }
+
+        synchronized (this) {
+            ArrayList<SudokuGenerator.Board> list = seeds.get(difficulty);
+            if (list.isEmpty()) {
+                return null;
+            }
+            SudokuGenerator.Board seed = list.get(random.nextInt(list.size()));
+            long count = SudokuGenerator.Board.transformCount(seed.getSize());
+            return seed.transform(randomIndex(count));
+        }
+    }
+
+    /**
+     * Keeps a copy of a puzzle to transform later. It must have a unique solution and be of the given difficulty.
+     */
+    public synchronized void addSeed(SudokuGenerator.Difficulty difficulty, SudokuGenerator.Board board) {
+        ArrayList<SudokuGenerator.Board> list = seeds.get(difficulty);
+        SudokuGenerator.Board seed = new SudokuGenerator.Board(board);
+        if (list.size() < capacity) {
+            list.add(seed);
+            return;
+        }
+        int slot = nextSlot.get(difficulty);
+        list.set(slot, seed);
+        nextSlot.put(difficulty, (slot + 1) % capacity);
+    }
+
+    public synchronized int seedCount(SudokuGenerator.Difficulty difficulty) {
+        return seeds.get(difficulty).size();
+    }
+
+    /**
+     * @return A uniformly random index from 0 to count - 1.
+     */
+    private long randomIndex(long count) {
+        long bits;
+        long index;
+        do {
+            bits = random.nextLong() >>> 1;
+            index = bits % count;
+        } while (bits - index + (count - 1) < 0);
+        return index;
+    }
+
+    // ----------------------------------------------------------------------------------
+    // Save / Load
+
+    /**
+     * Saves the 9x9 seeds in the same "DIFFICULTY digits" lines as PuzzlePool. The file is written next to the real
+     * one and renamed over it so that a crash can't leave it half written.
+     */
+    public void save(File file) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        synchronized (this) {
+            for (SudokuGenerator.Difficulty difficulty : SudokuGenerator.Difficulty.values()) {
+                for (SudokuGenerator.Board board : seeds.get(difficulty)) {
+                    if (board.getSize() != SudokuGenerator.Board.SIZE) {
+                        continue;
+                    }
+                    sb.append(difficulty.name()).append(' ');
+                    sb.append(PuzzleCodec.toDigits(board));
+                    sb.append('\n');
+                }
+            }
+        }
+
+        File tmp = new File(file.getPath() + ".tmp");
+        Writer writer = new FileWriter(tmp);
+        try {
+            writer.write(sb.toString());
+        } finally {
+            writer.close();
+        }
+        if (!tmp.renameTo(file)) {
+            throw new IOException("could not rename " + tmp);
+        }
+    }
+
+    /**
+     * Adds the seeds saved in the given file. A missing file is not an error, and lines that can't be read are
+     * skipped.
+     */
+    public void load(File file) throws IOException {
+        if (!file.exists()) {
+            return;
+        }
+
+        BufferedReader reader = new BufferedReader(new FileReader(file));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int space = line.indexOf(' ');
+                if ((space < 0) || (line.length() != space + 1 + PuzzleCodec.DIGITS_LENGTH)) {
+                    continue;
+                }
+
+                SudokuGenerator.Difficulty difficulty;
+                SudokuGenerator.Board board = new SudokuGenerator.Board();
+                try {
+                    difficulty = SudokuGenerator.Difficulty.valueOf(line.substring(0, space));
+                    PuzzleCodec.fromDigits(line, space + 1, board);
+                } catch (IllegalArgumentException e) {
+                    continue;
+                }
+                addSeed(difficulty, board);
+            }
+        } finally {
+            reader.close();
+        }
+    }
+}
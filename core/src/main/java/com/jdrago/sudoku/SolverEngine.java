@@ -0,0 +1,51 @@
+package com.jdrago.sudoku;
+
+import java.util.Random;
+
+/**
+ * A sudoku solving backend. Engines keep their working state between calls so
+ * that they can be reused for many boards, which also means a single engine
+ * must not be shared between threads.
+ */
+public interface SolverEngine {
+
+    /**
+     * Solves the board in place. Givens are left untouched.
+     * @param board The board to solve. Non-zero cells are treated as givens.
+     * @param random Used to randomize the search order, or null for a deterministic search.
+     * @return true if a solution was found, false if the board has no solution.
+     */
+    boolean solve (SudokuGenerator.Board board, Random random);
+
+    /**
+     * Counts the solutions of the board, stopping as soon as the limit is reached.
+     * @param board The board to count the solutions of. It is not modified.
+     * @param limit The number of solutions after which counting stops.
+     * @return The number of solutions found, at most limit.
+     */
+    int countSolutions (SudokuGenerator.Board board, int limit);
+
+    /**
+     * @param board The board to check. It is not modified.
+     * @return If the board has exactly one solution.
+     */
+    boolean isUnique (SudokuGenerator.Board board);
+
+    /**
+     * Caps the work a single call may do, since on big boards a search can run for a very long time.
+     * A call that hits the cap gives up: solve() returns false and countSolutions() returns its limit,
+     * so isUnique() errs on the side of false.
+     * @param nodes The number of search nodes a call may visit, or 0 for no cap.
+     */
+    void setNodeLimit (long nodes);
+
+    /**
+     * @return The number of search nodes this engine has visited over all of its calls.
+     */
+    long getNodeCount ();
+
+    /**
+     * @return The number of dead ends this engine has backed out of over all of its calls.
+     */
+    long getBacktrackCount ();
+}
@@ -0,0 +1,953 @@
+package com.jdrago.sudoku;
+
+// Pilfered/adapted from https://github.com/tbourvon/sudoku/blob/master/Generator.java
+// Copyrights / ownership kept intact.
+
+
+/*
+ * Copyright (c) 2015 Alexane Rose, Etienne Casanova, Ewen Fagon and Tristan Bourvon
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SudokuGenerator {
+
+    public static class Board {
+
+        // The classic 9x9 board, used whenever no size is given.
+        static final int SIZE = 9;
+        static final int BOX_SIZE = (int)Math.sqrt(SIZE);
+        static final int CELLS = SIZE * SIZE;
+
+        // Candidates are kept as one bit per number in an int, which caps the size at 25.
+        static final int MAX_SIZE = 25;
+
+        private final int size;
+        private final int boxSize;
+        private final int cells;
+
+        // Cell (x, y) lives at index y * size + x, and its constant flag is bit (index & 63) of word (index >> 6).
+        private final byte [] boardNumbers;
+        private final long [] boardConst;
+
+        public Board() {
+            this(SIZE);
+        }
+
+        /**
+         * @param size The number of cells on a side: 4, 9, 16 or 25.
+         * @throws IllegalArgumentException if size is not the square of a number, or above MAX_SIZE.
+         */
+        public Board(int size) {
+            if (!isValidSize(size)) {
+                throw new IllegalArgumentException("Unsupported board size " + size);
+            }
+            this.size = size;
+            this.boxSize = (int)Math.sqrt(size);
+            this.cells = size * size;
+            boardNumbers = new byte [cells];
+            boardConst = new long [(cells + 63) / 64];
+        }
+
+        /**
+         * Copy constructor.
+         * @param otherBoard Board to make a copy from.
+         */
+        public Board(Board otherBoard) {
+            this(otherBoard.size);
+            copyFrom(otherBoard);
+        }
+
+        /**
+         * @return The character a number is shown as: 1 to 9, then A for 10, B for 11 and so on.
+         */
+        public static char symbol(int number) {
+            return (char)((number < 10) ? ('0' + number) : ('A' + number - 10));
+        }
+
+        /**
+         * @return If boards can be made with that many cells on a side.
+         */
+        public static boolean isValidSize(int size) {
+            int boxSize = (int)Math.sqrt(size);
+            return (size > 0) && (size <= MAX_SIZE) && (boxSize * boxSize == size);
+        }
+
+        /**
+         * Overwrites this board with another one of the same size, without allocating.
+         * @param otherBoard Board to make a copy from.
+         */
+        public void copyFrom(Board otherBoard) {
+            if (otherBoard.size != size) {
+                throw new IllegalArgumentException("Cannot copy a " + otherBoard.size + " board into a " + size + " board");
+            }
+            System.arraycopy(otherBoard.boardNumbers, 0, boardNumbers, 0, cells);
+            System.arraycopy(otherBoard.boardConst, 0, boardConst, 0, boardConst.length);
+        }
+
+        /**
+         * @return The number of cells on a side, which is also the highest number.
+         */
+        public int getSize() {
+            return size;
+        }
+
+        /**
+         * @return The number of cells on a side of a box.
+         */
+        public int getBoxSize() {
+            return boxSize;
+        }
+
+        /**
+         * Converts a board to string, mostly used for display.
+         * See PuzzleCodec for compact forms meant for storage.
+         * @return A string representation of the board.
+         */
+        public String toString() {
+            StringBuilder str = new StringBuilder("\n");
+            for (int i = 0; i < size; i++) {
+                addLine(str, i % boxSize == 0);
+
+                for (int j = 0; j < size; j++) {
+                    if(j % boxSize == 0) {
+                        str.append("| ");
+                    } else {
+                        str.append("  ");
+                    }
+
+                    int number = getNumber(j, i);
+                    if (number == 0 ) {
+                        str.append("  ");
+                    } else {
+                        str.append(symbol(number)).append(' ');
+                    }
+                }
+                str.append("|\n");
+            }
+            addLine(str, true);
+
+            return str.toString();
+        }
+
+        /**
+         * Appends a separating row-wise line depending on the boolean passed.
+         * If the bool is true, then the line is a square separation line.
+         * Else, it is just a regular filling line.
+         * @param str The builder to append the line to.
+         * @param show Determines if we generate a square line or a filling line.
+         */
+        private void addLine(StringBuilder str, boolean show) {
+            for ( int j = 0; j < size; j++) {
+                if (show) {
+                    if ( j % boxSize == 0 ) {
+                        str.append("+---");
+                    } else {
+                        str.append("----");
+                    }
+                } else {
+                    if ( j % boxSize == 0 ) {
+                        str.append("|   ");
+                    } else {
+                        str.append("    ");
+                    }
+                }
+            }
+
+            if (show) {
+                str.append("+\n");
+            } else {
+                str.append("|\n");
+            }
+        }
+
+        public void setNumber ( int x, int y, int num ) {
+            boardNumbers[y * size + x] = (byte)num;
+        }
+
+        public void setConst( int x, int y, boolean isConstant) {
+            int index = y * size + x;
+            if (isConstant) {
+                boardConst[index >> 6] |= 1L << index;
+            } else {
+                boardConst[index >> 6] &= ~(1L << index);
+            }
+        }
+
+        /**
+         * Empties every cell and clears every constant flag.
+         */
+        public void clear() {
+            Arrays.fill(boardNumbers, (byte)0);
+            Arrays.fill(boardConst, 0L);
+        }
+
+        /**
+         * Marks every cell as constant or not in one go.
+         * @param isConstant The flag every cell gets.
+         */
+        public void setAllConst( boolean isConstant ) {
+            Arrays.fill(boardConst, 0L);
+            if (isConstant) {
+                for (int i = 0; i < cells; i++) {
+                    boardConst[i >> 6] |= 1L << i;
+                }
+            }
+        }
+
+        public int getNumber ( int x, int y ) {
+            return boardNumbers[y * size + x];
+        }
+
+        public boolean isConst( int x, int y ) {
+            int index = y * size + x;
+            return (boardConst[index >> 6] & (1L << index)) != 0;
+        }
+
+        public void eraseNumber ( int x, int y ) {
+            setNumber(x, y, 0);
+        }
+
+        /**
+         * Checks if the board is solved or not.
+         * @return If the board is solved or not.
+         */
+        public boolean isSolved() {
+            for (int i = 0; i < cells; i++) {
+                if (boardNumbers[i] == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * The number of transforms for boards of the given size: every relabelling of the numbers, every order of
+         * the bands and of the stacks, every order of the rows within each band and of the columns within each stack,
+         * each with and without transposing. 9x9 boards have about 1.2 trillion of them. Bigger boards have more than
+         * a long can count, so this saturates at Long.MAX_VALUE for them.
+         * @see #transform(long, Board)
+         */
+        public static long transformCount(int size) {
+            int boxSize = (int)Math.sqrt(size);
+            long count = multiplyFactorial(2, size);
+            for (int i = 0; i < 2 + 2 * boxSize; i++) {
+                count = multiplyFactorial(count, boxSize);
+            }
+            return count;
+        }
+
+        private static long multiplyFactorial(long count, int n) {
+            for (int i = 2; i <= n; i++) {
+                count = (count > Long.MAX_VALUE / i) ? Long.MAX_VALUE : count * i;
+            }
+            return count;
+        }
+
+        /**
+         * @return A new board holding transform(index, board).
+         */
+        public Board transform(long index) {
+            Board board = new Board(size);
+            transform(index, board);
+            return board;
+        }
+
+        /**
+         * Writes a transformed copy of this board. Transforms keep the solution unique and need exactly the same
+         * solving techniques, so a transformed sudoku has the same difficulty as the original.
+         *
+         * The index is read as a mixed radix number: the relabelling of the numbers in the lowest digits, then the
+         * order of the bands, of the stacks, of the rows within each band and of the columns within each stack, and
+         * finally whether to transpose. Different indexes below transformCount(size) give different transforms, and
+         * index 0 is the identity.
+         * @param index The transform, from 0 to transformCount(getSize()) - 1.
+         * @param out The board to write to. It must be the same size and not this board.
+         */
+        public void transform(long index, Board out) {
+            if ((out.size != size) || (out == this)) {
+                throw new IllegalArgumentException("Cannot transform into that board");
+            }
+            if (index < 0) {
+                throw new IllegalArgumentException("Bad transform " + index);
+            }
+
+            final int [] numbers = new int [size];
+            final int [] rows = new int [size];
+            final int [] cols = new int [size];
+            final int [] order = new int [boxSize];
+
+            index = permutation(index, numbers, size);
+            index = permutation(index, order, boxSize);
+            for (int i = 0; i < size; i++) {
+                rows[i] = order[i / boxSize] * boxSize;
+            }
+            index = permutation(index, order, boxSize);
+            for (int i = 0; i < size; i++) {
+                cols[i] = order[i / boxSize] * boxSize;
+            }
+            for (int band = 0; band < boxSize; band++) {
+                index = permutation(index, order, boxSize);
+                for (int i = 0; i < boxSize; i++) {
+                    rows[band * boxSize + i] += order[i];
+                }
+            }
+            for (int stack = 0; stack < boxSize; stack++) {
+                index = permutation(index, order, boxSize);
+                for (int i = 0; i < boxSize; i++) {
+                    cols[stack * boxSize + i] += order[i];
+                }
+            }
+            final boolean transpose = (index & 1) != 0;
+
+            Arrays.fill(out.boardConst, 0L);
+            for (int y = 0; y < size; y++) {
+                for (int x = 0; x < size; x++) {
+                    int from = transpose ? (rows[x] * size + cols[y]) : (rows[y] * size + cols[x]);
+                    int to = y * size + x;
+                    int number = boardNumbers[from];
+                    out.boardNumbers[to] = (byte)((number == 0) ? 0 : numbers[number - 1] + 1);
+                    if ((boardConst[from >> 6] & (1L << from)) != 0) {
+                        out.boardConst[to >> 6] |= 1L << to;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Fills the first count entries of perm with the permutation of 0 to count - 1 that the lowest digits of
+         * index pick, in the factorial number system.
+         * @return What is left of the index, index / count!.
+         */
+        static long permutation(long index, int [] perm, int count) {
+            for (int i = 0; i < count; i++) {
+                perm[i] = i;
+            }
+            for (int i = 0; i < count; i++) {
+                int pick = i + (int)(index % (count - i));
+                index /= (count - i);
+                int chosen = perm[pick];
+                for (int k = pick; k > i; k--) {
+                    perm[k] = perm[k - 1];
+                }
+                perm[i] = chosen;
+            }
+            return index;
+        }
+    }
+
+    /**
+     * We define the defficulty that can only take the following difficulty values: EASY, MEDIUM, HARD, EXTREME.
+     */
+    public enum Difficulty {
+        EASY,
+        MEDIUM,
+        HARD,
+        EXTREME
+    }
+
+    /**
+     * The solver backends the generator can be built with.
+     */
+    public enum Engine {
+        BITMASK,
+        DLX;
+
+        public SolverEngine create() {
+            return create(Board.SIZE);
+        }
+
+        /**
+         * @param size The size of the boards the solver will be given.
+         */
+        public SolverEngine create(int size) {
+            switch (this) {
+                case DLX:
+                    return new DlxSolver(size);
+                default:
+                    return new BitmaskSolver(size);
+            }
+        }
+    }
+
+    /**
+     * What a generateSudoku call with a timeout came up with.
+     */
+    public static class Result {
+        /**
+         * The sudoku of the requested difficulty, or when the time ran out the hardest one found until then. It is
+         * null if the call was cancelled, or if the time ran out before any attempt got far enough to be graded.
+         */
+        public final Board board;
+
+        /**
+         * The difficulty the board grades at, null when there is no board.
+         */
+        public final Difficulty difficulty;
+
+        public final boolean timedOut;
+
+        public Result(Board board, Difficulty difficulty, boolean timedOut) {
+            this.board = board;
+            this.difficulty = difficulty;
+            this.timedOut = timedOut;
+        }
+    }
+
+    /**
+     * Receives progress reports from generateSudoku. It is called from the generating threads.
+     */
+    public interface ProgressListener {
+        /**
+         * @param attempts The number of complete boards tried so far.
+         * @param lowestSudoku The fewest numbers left on a unique sudoku found so far.
+         */
+        void onProgress (int attempts, int lowestSudoku);
+    }
+
+    private final Random random = new Random();
+    private final Engine engineType;
+    private final SolverEngine engine;
+    private final int threads;
+    private final int size;
+
+    // On boards above the classic size every uniqueness check is capped at LARGE_NODE_LIMIT search nodes, since an
+    // uncapped check on a sparse 25x25 board can run for minutes.
+    static final long LARGE_NODE_LIMIT = 200;
+
+    // Share of the reach an attempt removes before it starts grading, by difficulty. Without it, the first board
+    // graded EASY would be the complete grid minus one number.
+    private static final double MIN_REMOVED[] = {0.52, 0.56, 0.6, 0.62};
+
+    // Share of the reach an attempt may go on removing once it grades at the target, as long as the grade holds.
+    // The actual count is drawn for every attempt, so that the puzzles of a difficulty vary in how many clues
+    // they keep instead of all stopping at the first board to reach it.
+    private static final double EXTRA_REMOVED = 0.08;
+
+    // The number of cells MIN_REMOVED is measured against. Bigger boards need a larger share of their cells filled
+    // in to stay unique, so they count fewer than all of their cells.
+    private final double reach;
+
+    private volatile ProgressListener progressListener;
+    private volatile GenerationListener generationListener;
+
+    // The generateSudoku call in progress, so that cancel() can reach it.
+    private volatile Run currentRun;
+
+    // Scratch space for attempt(), reused from one attempt to the next. Every worker thread has its own generator.
+    private final Board solution;
+    private final Board puzzle;
+    private final int [] removed;
+    private final DifficultyGrader grader;
+    private final GenerationListener.Attempt attemptStats = new GenerationListener.Attempt();
+
+    public SudokuGenerator() {
+        this(Engine.BITMASK);
+    }
+
+    /**
+     * @param engine The solver backend used to fill grids and check uniqueness.
+     */
+    public SudokuGenerator(Engine engine) {
+        this(engine, 1);
+    }
+
+    /**
+     * @param engine The solver backend used to fill grids and check uniqueness.
+     * @param threads The number of attempts run in parallel by generateSudoku.
+     */
+    public SudokuGenerator(Engine engine, int threads) {
+        this(engine, threads, Board.SIZE);
+    }
+
+    /**
+     * @param engine The solver backend used to fill grids and check uniqueness.
+     * @param threads The number of attempts run in parallel by generateSudoku.
+     * @param size The size of the sudokus to generate, see Board.isValidSize.
+     */
+    public SudokuGenerator(Engine engine, int threads, int size) {
+        this.engineType = engine;
+        this.engine = engine.create(size);
+        this.threads = Math.max(1, threads);
+        this.size = size;
+        final int boxSize = (int)Math.sqrt(size);
+        reach = size * size * Math.min(1.0, 1.0 - 0.1 * (boxSize - Board.BOX_SIZE));
+        solution = new Board(size);
+        puzzle = new Board(size);
+        removed = new int [size * size];
+        grader = new DifficultyGrader(size);
+    }
+
+    /**
+     * @return The size of the sudokus this generator makes.
+     */
+    public int getSize () {
+        return size;
+    }
+
+    public void setProgressListener (ProgressListener listener) {
+        progressListener = listener;
+    }
+
+    /**
+     * @param listener Receives the cost of every attempt and of every generateSudoku call, or null for none.
+     */
+    public void setGenerationListener (GenerationListener listener) {
+        generationListener = listener;
+    }
+
+    /**
+     * Makes the running generateSudoku call, if any, give up and return null. Safe to call from any thread.
+     */
+    public void cancel () {
+        Run run = currentRun;
+        if (run != null) {
+            run.cancelled.set(true);
+        }
+    }
+
+    /**
+     * Generates a sudoku from a fresh random seed.
+     * @param difficulty The difficulty of the sudoku to be generated.
+     * @return The generated sudoku, or null if the generation was cancelled or the calling thread interrupted.
+     * @see #generateSudoku(Difficulty, long)
+     */
+    public Board generateSudoku (Difficulty difficulty) {
+        return generateSudoku(difficulty, random.nextLong());
+    }
+
+    /**
+     * Method used to generate a Sudoku. We first generate a complete board. Then we delete random numbers, and verify that
+     * the sudoku still posseses a unique solution. Once enough numbers are gone, every removal is also graded with
+     * DifficultyGrader: a removal that makes the sudoku harder than asked is put back. Once it grades at the requested
+     * difficulty we remove a random few more numbers while the grade holds, then stop. An attempt only fails when it
+     * runs out of numbers it can remove before reaching the difficulty.
+     *
+     * Attempts are numbered, and attempt n draws all of its random numbers from a source seeded with attemptSeed(seed, n).
+     * The result is the sudoku of the lowest numbered attempt that reaches the difficulty, so the same seed, difficulty and
+     * engine always give the same sudoku, whatever the number of threads.
+     * @param difficulty The difficulty of the sudoku to be generated.
+     * @param seed Identifies the sudoku together with the difficulty.
+     * @return The generated sudoku, or null if the generation was cancelled or the calling thread interrupted.
+     */
+    public Board generateSudoku (Difficulty difficulty, long seed) {
+        final Run run = generate(difficulty, seed, -1);
+        return run.cancelled.get() ? null : run.result;
+    }
+
+    /**
+     * Generates a sudoku like generateSudoku(difficulty), but gives up once the timeout has passed and returns the
+     * hardest sudoku it found until then, which is of an easier difficulty. Attempts keep track of the hardest
+     * sudoku they went through, so giving up loses nothing but the attempts still running. The timeout is checked
+     * between removals, so a call can run over by as long as it takes to fill one grid.
+     * @param difficulty The difficulty of the sudoku to be generated.
+     * @param timeout How long to try for the requested difficulty.
+     * @param unit The unit of the timeout.
+     * @return The sudoku, with the difficulty it actually has.
+     */
+    public Result generateSudoku (Difficulty difficulty, long timeout, TimeUnit unit) {
+        final Run run = generate(difficulty, random.nextLong(), Math.max(0, unit.toNanos(timeout)));
+        if (run.cancelled.get()) {
+            return new Result(null, null, false);
+        }
+        if (run.result != null) {
+            return new Result(run.result, difficulty, false);
+        }
+        return new Result(run.best, run.bestGrade, true);
+    }
+
+    /**
+     * Runs the attempts of one generateSudoku call.
+     * @param timeoutNanos How long the attempts may run for, or -1 for as long as it takes.
+     * @return The finished run.
+     */
+    private Run generate (Difficulty difficulty, long seed, long timeoutNanos) {
+        final Run run = new Run(difficulty, seed, size * size, timeoutNanos, progressListener, generationListener);
+        final long start = (run.metrics != null) ? System.nanoTime() : 0;
+        currentRun = run;
+        try {
+            if (threads > 1) {
+                generateParallel(run);
+            } else {
+                work(run);
+            }
+        } finally {
+            currentRun = null;
+        }
+        if (run.metrics != null) {
+            boolean found = !run.cancelled.get() && (run.result != null);
+            run.metrics.onGenerated(difficulty, run.attemptCount(), System.nanoTime() - start, found);
+        }
+        return run;
+    }
+
+    /**
+     * Derives the seed of one attempt from the seed of a whole generation, in the style of SplittableRandom.split().
+     */
+    static long attemptSeed (long seed, int attempt) {
+        long z = seed + (attempt + 1) * 0x9e3779b97f4a7c15L;
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Runs one worker per thread, each with its own engine and random source, and waits for all of them.
+     */
+    private void generateParallel (final Run run) {
+        ArrayList < Callable < Void > > workers = new ArrayList < Callable < Void > > ();
+        for (int i = 0; i < threads; i++) {
+            final SudokuGenerator worker = new SudokuGenerator(engineType, 1, size);
+            workers.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    worker.work(run);
+                    return null;
+                }
+            });
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            for (Future<Void> future : pool.invokeAll(workers)) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            run.cancelled.set(true);
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Claims attempt numbers and runs them until an attempt at or below the claimed number has found a sudoku.
+     */
+    private void work (Run run) {
+        while (true) {
+            int attempt = run.nextAttempt.getAndIncrement();
+            if (!run.wants(attempt)) {
+                return;
+            }
+            Board board = attempt(run, attempt);
+            if (board != null) {
+                run.offer(attempt, board);
+            }
+        }
+    }
+
+    /**
+     * Runs one attempt, and tells the run's generation listener what it cost.
+     * @return A sudoku of the requested difficulty, or null if this attempt did not reach it or is no longer wanted.
+     */
+    private Board attempt (Run run, int attempt) {
+        final GenerationListener metrics = run.metrics;
+        attemptStats.reset(run.difficulty, attempt);
+        if (metrics == null) {
+            return removeNumbers(run, attempt);
+        }
+
+        final long start = System.nanoTime();
+        final long nodes = engine.getNodeCount();
+        final long backtracks = engine.getBacktrackCount();
+        Board board = removeNumbers(run, attempt);
+        attemptStats.found = board != null;
+        attemptStats.solverNodes = engine.getNodeCount() - nodes;
+        attemptStats.solverBacktracks = engine.getBacktrackCount() - backtracks;
+        attemptStats.nanos = System.nanoTime() - start;
+        metrics.onAttempt(attemptStats);
+        return board;
+    }
+
+    /**
+     * Generates a complete board and removes numbers from it until it grades at the requested difficulty.
+     * Only the order in which the numbers were removed is kept, and the returned sudoku is rebuilt from the
+     * complete board, so an attempt allocates nothing but its result.
+     * @param run The generation this attempt belongs to.
+     * @param attempt The number of this attempt, which seeds its random source.
+     * @return A sudoku of the requested difficulty, or null if this attempt did not reach it or is no longer wanted.
+     */
+    private Board removeNumbers (Run run, int attempt) {
+        random.setSeed(attemptSeed(run.seed, attempt));
+        Difficulty difficulty = run.difficulty;
+
+        solution.clear();
+        engine.setNodeLimit(0);
+        if (!engine.solve(solution, random)) {
+            return null;
+        }
+        solution.setAllConst(true);
+
+        engine.setNodeLimit((size > Board.SIZE) ? LARGE_NODE_LIMIT : 0);
+        final int minRemoved = (int)(reach * MIN_REMOVED[difficulty.ordinal()]);
+        puzzle.copyFrom(solution);
+        int removedCount = 0;
+        int failures = 0;
+        boolean reached = false;
+        boolean wanted = true;
+        int extra = -1; // Removals still to make at the target grade, -1 until it is reached
+
+        // The hardest grade this attempt has kept so far, and how many numbers it had removed then.
+        Difficulty hardest = null;
+        int hardestRemoved = 0;
+
+        while((extra != 0) && (removedCount + 1 < size * size)){
+            if (!run.wants(attempt)) {
+                wanted = false;
+                break;
+            }
+            int cell = pickNumber(puzzle);
+            int x = cell % size;
+            int y = cell / size;
+            int number = puzzle.getNumber(x, y);
+            puzzle.setNumber(x, y, 0);
+
+            boolean keep;
+            if (removedCount + 1 < minRemoved) {
+                keep = checkUnique(puzzle);
+            } else {
+                // A sudoku the grader can finish has a unique solution, so only EXTREME ones need the solver.
+                Difficulty grade = grader.grade(puzzle);
+                attemptStats.grades++;
+                keep = (reached ? (grade == difficulty) : (grade.compareTo(difficulty) <= 0))
+                        && ((grade != Difficulty.EXTREME) || checkUnique(puzzle));
+                if (keep) {
+                    hardest = grade;
+                    hardestRemoved = removedCount + 1;
+                    if (reached) {
+                        extra--;
+                    } else if (grade == difficulty) {
+                        reached = true;
+                        extra = random.nextInt((int)(reach * EXTRA_REMOVED) + 1);
+                    }
+                }
+            }
+
+            if (keep) {
+                removed[removedCount++] = cell;
+                failures = 0;
+            } else if (failures < size) {
+                puzzle.setNumber(x, y, number);
+                failures++;
+                attemptStats.removalsRejected++;
+            } else {
+                attemptStats.removalsRejected++;
+                break;
+            }
+        }
+
+        // Under a deadline even a failed or interrupted attempt may hold the best sudoku the call will get.
+        if (run.hasDeadline && !reached && (hardest != null) && run.improves(hardest)) {
+            run.offerBest(hardest, step(hardestRemoved));
+        }
+        if (!wanted) {
+            return null;
+        }
+
+        // The full grid plus one board per successful removal
+        run.reportAttempt(removedCount + 1);
+        attemptStats.cluesRemoved = removedCount;
+        return reached ? step(removedCount) : null;
+    }
+
+    private boolean checkUnique (Board board) {
+        boolean unique = engine.isUnique(board);
+        attemptStats.uniquenessChecks++;
+        if (unique) {
+            attemptStats.uniqueResults++;
+        }
+        return unique;
+    }
+
+    /**
+     * Rebuilds the board the last attempt had after its first count removals.
+     * @param count The number of removed numbers, 0 giving the complete board.
+     * @return A new board.
+     */
+    private Board step (int count) {
+        Board board = new Board(solution);
+        for (int i = 0; i < count; i++) {
+            int x = removed[i] % size;
+            int y = removed[i] / size;
+            board.setNumber(x, y, 0);
+            board.setConst(x, y, false);
+        }
+        return board;
+    }
+
+    /**
+     * State of one generateSudoku call, shared by all of its workers.
+     */
+    private static class Run {
+        final Difficulty difficulty;
+        final long seed;
+        final int cells;
+        final ProgressListener listener;
+        final GenerationListener metrics;
+        final boolean hasDeadline;
+        final long deadline;
+        final AtomicBoolean cancelled = new AtomicBoolean(false);
+        final AtomicInteger nextAttempt = new AtomicInteger(0);
+
+        // Lowest numbered attempt that found a sudoku so far, and that sudoku.
+        volatile int winner = Integer.MAX_VALUE;
+        Board result;
+
+        // Under a deadline, the hardest sudoku below the requested difficulty found so far.
+        Difficulty bestGrade;
+        Board best;
+
+        // Progress counters.
+        int attempts = 0;
+        int lowestSudoku;
+
+        Run(Difficulty difficulty, long seed, int cells, long timeoutNanos, ProgressListener listener,
+            GenerationListener metrics) {
+            this.difficulty = difficulty;
+            this.seed = seed;
+            this.cells = cells;
+            this.listener = listener;
+            this.metrics = metrics;
+            hasDeadline = timeoutNanos >= 0;
+            deadline = System.nanoTime() + timeoutNanos;
+            lowestSudoku = cells;
+        }
+
+        /**
+         * @return false once the attempt can no longer change the result.
+         */
+        boolean wants (int attempt) {
+            if (Thread.currentThread().isInterrupted()) {
+                // The flag is left set, for the caller to see too
+                cancelled.set(true);
+            }
+            if (cancelled.get() || attempt >= winner) {
+                return false;
+            }
+            return !hasDeadline || (System.nanoTime() - deadline < 0);
+        }
+
+        synchronized boolean improves (Difficulty grade) {
+            return (bestGrade == null) || (grade.compareTo(bestGrade) > 0);
+        }
+
+        synchronized void offerBest (Difficulty grade, Board board) {
+            if (improves(grade)) {
+                bestGrade = grade;
+                best = board;
+            }
+        }
+
+        synchronized void offer (int attempt, Board board) {
+            if (attempt < winner) {
+                winner = attempt;
+                result = board;
+            }
+        }
+
+        synchronized int attemptCount () {
+            return attempts;
+        }
+
+        /**
+         * Updates the progress counters and tells the listener about them.
+         * @param steps The number of boards the last attempt went through, the full grid included.
+         */
+        void reportAttempt (int steps) {
+            int attemptsNow;
+            int lowestNow;
+            synchronized (this) {
+                attempts++;
+                lowestSudoku = Math.min(lowestSudoku, cells - (steps - 1));
+                attemptsNow = attempts;
+                lowestNow = lowestSudoku;
+            }
+
+            if (listener != null) {
+                listener.onProgress(attemptsNow, lowestNow);
+            }
+        }
+    }
+
+    /**
+     * Method used to verify that a Sudoku posseses a unique solution.
+     * @param b The board we need to verify the unicity of.
+     * @return If the board possesses a unique solution.
+     */
+    public boolean verifyUnicity (Board b ) {
+        return engine.isUnique(b);
+    }
+
+    /**
+     * Counts the solutions of a board, giving up once limit solutions have been found.
+     * A limit of 2 is enough to tell a proper sudoku from one with several solutions.
+     * @param b The board to count the solutions of. It is not modified.
+     * @param limit The number of solutions after which we stop searching.
+     * @return The number of solutions, at most limit.
+     */
+    public int countSolutions (Board b, int limit) {
+        return engine.countSolutions(b, limit);
+    }
+
+    /**
+     * Deletes a random number in the board.
+     * @param b The board we need to delete a number from.
+     * @return The board with the deleted number.
+     */
+    public Board deleteNumber (Board b) {
+        Board board = new Board(b);
+        int cell = pickNumber(board);
+        int x = cell % b.getSize();
+        int y = cell / b.getSize();
+        board.setNumber(x, y, 0);
+        board.setConst(x, y, false);
+        return board;
+    }
+
+    /**
+     * Picks a random cell holding a number.
+     * @param b The board to pick from. It must not be empty.
+     * @return The index of the cell, y * size + x.
+     */
+    private int pickNumber (Board b) {
+        final int boardSize = b.getSize();
+        while (true){
+            int x = random.nextInt(boardSize);
+            int y = random.nextInt(boardSize);
+            if (b.getNumber(x, y) != 0 ) {
+                return y * boardSize + x;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,68 @@
+package com.jdrago.sudoku;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class CanonicalFormTest {
+
+    /**
+     * A solved grid built from a pattern, with more automorphisms than any random grid.
+     */
+    private static SudokuGenerator.Board patternGrid() {
+        SudokuGenerator.Board board = new SudokuGenerator.Board();
+        for (int y = 0; y < 9; ++y) {
+            for (int x = 0; x < 9; ++x) {
+                board.setNumber(x, y, 1 + (x + 3 * (y % 3) + y / 3) % 9);
+            }
+        }
+        return board;
+    }
+
+    private static void assertInvariant(SudokuGenerator.Board board, Random random) {
+        String canonical = CanonicalForm.canonicalize(board).toString();
+        long fingerprint = CanonicalForm.fingerprint(board);
+        long count = SudokuGenerator.Board.transformCount(board.getSize());
+        for (int i = 0; i < 5; ++i) {
+            SudokuGenerator.Board transformed = board.transform((random.nextLong() >>> 1) % count);
+            assertEquals(canonical, CanonicalForm.canonicalize(transformed).toString());
+            assertEquals(fingerprint, CanonicalForm.fingerprint(transformed));
+        }
+    }
+
+    @Test
+    public void puzzlesAreInvariant() throws Exception {
+        Random random = new Random(1);
+        SudokuGenerator generator = new SudokuGenerator(SudokuGenerator.Engine.BITMASK, 1, 9);
+        for (int i = 0; i < 5; ++i) {
+            assertInvariant(generator.generateSudoku(SudokuGenerator.Difficulty.EASY, i), random);
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void emptyBoardIsFast() throws Exception {
+        SudokuGenerator.Board empty = new SudokuGenerator.Board();
+        assertEquals(empty.toString(), CanonicalForm.canonicalize(empty).toString());
+        assertInvariant(empty, new Random(2));
+    }
+
+    @Test(timeout = 10000)
+    public void symmetricGridIsFast() throws Exception {
+        assertInvariant(patternGrid(), new Random(3));
+    }
+
+    @Test(timeout = 10000)
+    public void symmetricPuzzleIsFast() throws Exception {
+        SudokuGenerator.Board board = patternGrid();
+        for (int y = 0; y < 9; ++y) {
+            for (int x = 0; x < 9; ++x) {
+                if ((x + y) % 3 == 0) {
+                    board.setNumber(x, y, 0);
+                }
+            }
+        }
+        assertInvariant(board, new Random(4));
+    }
+}
@@ -0,0 +1,75 @@
+package com.jdrago.sudoku;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class FingerprintFilterTest {
+    private static final double RATE = 0.0001;
+
+    private static long neededBytes(long expected, double rate) {
+        double ln2 = Math.log(2);
+        return (long) Math.ceil(-expected * Math.log(rate) / (ln2 * ln2) / 8.0);
+    }
+
+    @Test
+    public void forCountOfOne() throws Exception {
+        FingerprintFilter filter = FingerprintFilter.forCount(1, RATE);
+        assertTrue(filter.sizeInBytes() >= 8);
+        assertTrue(filter.add(12345L));
+        assertTrue(filter.mightContain(12345L));
+        assertFalse(filter.add(12345L));
+    }
+
+    @Test
+    public void forCountOfZero() throws Exception {
+        FingerprintFilter filter = FingerprintFilter.forCount(0, RATE);
+        assertTrue(filter.sizeInBytes() >= 8);
+    }
+
+    @Test
+    public void sizeIsNextPowerOfTwo() throws Exception {
+        // Counts whose size lands right on, just under and just over a power of two
+        for (long expected : new long[] { 1, 2, 7, 100, 1 << 10, (1 << 10) + 1, 1 << 16, 1000000 }) {
+            long needed = neededBytes(expected, RATE);
+            long size = FingerprintFilter.forCount(expected, RATE).sizeInBytes();
+            assertEquals(0, size & (size - 1));
+            assertTrue("too small for " + expected, size >= needed);
+            assertTrue("twice too big for " + expected, (size == 8) || (size < 2 * needed));
+        }
+    }
+
+    @Test
+    public void sizeOnPowerOfTwoBoundary() throws Exception {
+        // At a 1/2 false positive rate one fingerprint needs 1 / ln 2 bits, so 8 * 64 ln 2 fingerprints need
+        // 64 bytes, give or take rounding
+        long expected = (long) Math.floor(8 * 64 * Math.log(2));
+        long needed = neededBytes(expected, 0.5);
+        assertEquals(64, needed);
+        assertEquals(64, FingerprintFilter.forCount(expected, 0.5).sizeInBytes());
+        assertEquals(128, FingerprintFilter.forCount(expected + 1, 0.5).sizeInBytes());
+    }
+
+    @Test
+    public void falsePositiveRateHoldsAtExpectedCount() throws Exception {
+        int expected = 10000;
+        int probes = 100000;
+        Random random = new Random(1);
+        FingerprintFilter filter = FingerprintFilter.forCount(expected, RATE);
+        for (int i = 0; i < expected; ++i) {
+            filter.add(random.nextLong());
+        }
+        assertTrue(filter.falsePositiveRate() <= RATE);
+        int hits = 0;
+        for (int i = 0; i < probes; ++i) {
+            if (filter.mightContain(random.nextLong())) {
+                hits++;
+            }
+        }
+        // The random numbers are seeded, so this always sees the same count; three times the rate leaves room
+        // for a different hash mix without letting a broken filter through
+        assertTrue("false positives " + hits, hits <= 3 * RATE * probes);
+    }
+}
@@ -0,0 +1,115 @@
+package com.jdrago.sudoku;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class PuzzleCodecTest {
+
+    private static void assertSameBoard(SudokuGenerator.Board expected, SudokuGenerator.Board actual) {
+        for (int y = 0; y < SudokuGenerator.Board.SIZE; ++y) {
+            for (int x = 0; x < SudokuGenerator.Board.SIZE; ++x) {
+                assertEquals(expected.getNumber(x, y), actual.getNumber(x, y));
+                assertEquals(expected.getNumber(x, y) != 0, actual.isConst(x, y));
+            }
+        }
+    }
+
+    private static SudokuGenerator.Board solvedGrid() {
+        SudokuGenerator.Board board = new SudokuGenerator.Board();
+        new BitmaskSolver().solve(board, new Random(1));
+        return board;
+    }
+
+    private static void assertRoundTrip(SudokuGenerator.Board board) {
+        byte bytes[] = new byte[3 + PuzzleCodec.MAX_ENCODED_LENGTH];
+        int length = PuzzleCodec.encode(board, bytes, 3);
+        assertEquals(PuzzleCodec.encodedLength(board), length);
+        assertTrue(length <= PuzzleCodec.MAX_ENCODED_LENGTH);
+
+        SudokuGenerator.Board decoded = new SudokuGenerator.Board();
+        assertEquals(length, PuzzleCodec.decode(bytes, 3, decoded));
+        assertSameBoard(board, decoded);
+
+        SudokuGenerator.Board mapped = new SudokuGenerator.Board();
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        assertEquals(length, PuzzleCodec.decode(buffer, 3, mapped));
+        assertEquals(0, buffer.position());
+        assertSameBoard(board, mapped);
+
+        SudokuGenerator.Board digits = new SudokuGenerator.Board();
+        PuzzleCodec.fromDigits(PuzzleCodec.toDigits(board), 0, digits);
+        assertSameBoard(board, digits);
+    }
+
+    @Test
+    public void generatedPuzzlesRoundTrip() throws Exception {
+        SudokuGenerator generator = new SudokuGenerator(SudokuGenerator.Engine.BITMASK, 1, 9);
+        boolean odd = false;
+        boolean even = false;
+        for (int i = 0; i < 10; ++i) {
+            SudokuGenerator.Board board = generator.generateSudoku(SudokuGenerator.Difficulty.EASY, i);
+            assertRoundTrip(board);
+            int givens = 81 - PuzzleCodec.toDigits(board).replace("0", "").length();
+            odd |= (givens % 2) == 1;
+            even |= (givens % 2) == 0;
+        }
+        assertTrue("both nibble alignments covered", odd && even);
+    }
+
+    @Test
+    public void emptyAndFullBoardsRoundTrip() throws Exception {
+        SudokuGenerator.Board empty = new SudokuGenerator.Board();
+        assertEquals(PuzzleCodec.MASK_LENGTH, PuzzleCodec.encodedLength(empty));
+        assertRoundTrip(empty);
+
+        SudokuGenerator.Board full = solvedGrid();
+        assertEquals(PuzzleCodec.MAX_ENCODED_LENGTH, PuzzleCodec.encodedLength(full));
+        assertRoundTrip(full);
+    }
+
+    @Test
+    public void decodeClearsOldCells() throws Exception {
+        byte bytes[] = new byte[PuzzleCodec.MAX_ENCODED_LENGTH];
+        PuzzleCodec.encode(new SudokuGenerator.Board(), bytes, 0);
+        SudokuGenerator.Board board = solvedGrid();
+        PuzzleCodec.decode(bytes, 0, board);
+        assertSameBoard(new SudokuGenerator.Board(), board);
+    }
+
+    @Test
+    public void digitsAcceptDots() throws Exception {
+        String digits = PuzzleCodec.toDigits(solvedGrid());
+        String dotted = "." + digits.substring(1);
+        SudokuGenerator.Board board = new SudokuGenerator.Board();
+        PuzzleCodec.fromDigits(dotted, 0, board);
+        assertEquals("0" + digits.substring(1), PuzzleCodec.toDigits(board));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void digitsRejectLetters() throws Exception {
+        String digits = PuzzleCodec.toDigits(solvedGrid());
+        PuzzleCodec.fromDigits("x" + digits.substring(1), 0, new SudokuGenerator.Board());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void digitsRejectShortText() throws Exception {
+        PuzzleCodec.fromDigits("123", 0, new SudokuGenerator.Board());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void decodeRejectsOutOfRangeValues() throws Exception {
+        byte bytes[] = new byte[PuzzleCodec.MAX_ENCODED_LENGTH];
+        bytes[0] = 1;
+        bytes[PuzzleCodec.MASK_LENGTH] = 0xa;
+        PuzzleCodec.decode(bytes, 0, new SudokuGenerator.Board());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void otherSizesAreRejected() throws Exception {
+        PuzzleCodec.encodedLength(new SudokuGenerator.Board(16));
+    }
+}